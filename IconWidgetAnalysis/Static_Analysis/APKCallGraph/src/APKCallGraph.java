@@ -1,9 +1,10 @@
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,40 +44,85 @@ import javax.swing.plaf.basic.BasicInternalFrameTitlePane;
 public class APKCallGraph {
 
 
-	static DirectedPseudograph<APKCallGraph.MethodNode, CallEdge> jg = new DirectedPseudograph<>(CallEdge.class);
-	static HashMap<String, APKCallGraph.MethodNode> methods = new HashMap<>();
-	static HashMap<SootMethod, Boolean> visited = new HashMap<SootMethod, Boolean>();
-	static ArrayList<SootMethod> methodsList = new ArrayList<>();
-	static APKCallGraph apkg = new APKCallGraph();
+	/*
+	 * Per-APK analysis state. One APKCallGraph instance is a session that can analyze APKs back to back,
+	 * reset() drops everything learned about the previous APK.
+	 */
+	DirectedPseudograph<APKCallGraph.MethodNode, CallEdge> jg;
+	HashMap<String, APKCallGraph.MethodNode> methods;
+	HashMap<SootMethod, Boolean> visited;
+	ArrayList<SootMethod> methodsList;
 
-	static ArrayList<SootMethod> handleMessageMethods = new ArrayList<>();
-	static ArrayList<SootMethod> asyncExecuteMethods = new ArrayList<>();
-	static ArrayList<SootMethod> clickMethods = new ArrayList<>();
-	static ArrayList<SootMethod> threadTgt = new ArrayList<>();
+	// targets of the implicit edges, in discovery order
+	LinkedHashSet<SootMethod> handleMessageMethods;
+	LinkedHashSet<SootMethod> asyncExecuteMethods;
+	LinkedHashSet<SootMethod> clickMethods;
+	LinkedHashSet<SootMethod> threadTgt;
 
-	static ArrayList<String> threadSrc = new ArrayList<>();
+	LinkedHashSet<String> threadSrc;
+	// thread run() signature -> discovery order, so thread targets of a class are a prefix range
+	TreeMap<String, Integer> threadTgtIndex;
 
-	static int edgeId = 0;
-	static int nodeId = 0;
-	static boolean isGenerated = false;
+	int edgeId;
+	int nodeId;
+	boolean isGenerated;
 
 
-	static IC3ProtobufParser ic3parser = new IC3ProtobufParser();
+	IC3ProtobufParser ic3parser;
 
 
 
-	static HashMap<String, List<String>> edges = new HashMap<>();
-	static HashMap<String, List<String>> afterICC = new HashMap<>();
+	HashMap<String, List<String>> edges;
+	HashMap<String, List<String>> afterICC;
 
-	//static Connection connection = null;
-	static HashMap<String, ArrayList<String>> lineVSHdl = new HashMap<>();
-	static HashMap<String, ArrayList<String>> HdlVSPM = new HashMap<>();
-	static HashMap<String, ArrayList<String>> permMethods = new HashMap<>();
-	static ArrayList<String> handlers = new ArrayList<>();
-	static HashMap<String, ArrayList<Stmt>> methodToStmts = new HashMap<>();
+	HashMap<String, ArrayList<String>> lineVSHdl;
+	HashMap<String, ArrayList<String>> HdlVSPM;
+	HashMap<String, ArrayList<String>> permMethods;
+	ArrayList<String> handlers;
+	HashMap<String, ArrayList<Stmt>> methodToStmts;
+
+	CallGraphReachability reachability;
+
+	// kept open across the APKs of a session
+	Img2WidgetsCorpus corpus;
+	// -Dsubgraph.dot=false skips the per-handler DOT files
+	boolean exportSubGraphs = !"false".equals(System.getProperty("subgraph.dot"));
+
+	// shared by all sessions of this JVM
+	static PScoutPermissionIndex permissionIndex = null;
+	static String pscoutUrl = "jdbc:mysql://localhost:3306/APKCalls?user=root&password=jiaozhuys05311&serverTimezone=GMT";
 
 	static String androidPlatformPath = "/Users/shaoyang/Library/Android/sdk/platforms/android-18/android.jar";
 
+	public APKCallGraph() {
+		reset();
+	}
+
+	public void reset() {
+		jg = new DirectedPseudograph<>(CallEdge.class);
+		methods = new HashMap<>();
+		visited = new HashMap<SootMethod, Boolean>();
+		methodsList = new ArrayList<>();
+		handleMessageMethods = new LinkedHashSet<>();
+		asyncExecuteMethods = new LinkedHashSet<>();
+		clickMethods = new LinkedHashSet<>();
+		threadTgt = new LinkedHashSet<>();
+		threadSrc = new LinkedHashSet<>();
+		threadTgtIndex = new TreeMap<>();
+		edgeId = 0;
+		nodeId = 0;
+		isGenerated = false;
+		ic3parser = new IC3ProtobufParser();
+		edges = new HashMap<>();
+		afterICC = new HashMap<>();
+		lineVSHdl = new HashMap<>();
+		HdlVSPM = new HashMap<>();
+		permMethods = new HashMap<>();
+		handlers = new ArrayList<>();
+		methodToStmts = new HashMap<>();
+		reachability = null;
+	}
+
 
 
 
@@ -209,6 +255,7 @@ public class APKCallGraph {
 		 * Main function, basic running configs, change dir(s) before running.
 		 * Scan every input widget-handler mapping, skip when no mapping is found.
 		 * If mapping is found, build extended static call graph of the app, extract subgraph(s), check API(s) and permission.
+		 * With -Dapk.list=<file> (one APK name per line) all APKs are analyzed in this JVM, one session reset per APK.
 		 */
 		String apk = "com.Abby_Alex";
 		//String apk = args[0].substring(args[0].lastIndexOf("/"), args[0].indexOf(".apk"));
@@ -222,27 +269,75 @@ public class APKCallGraph {
 		//String ic3 = args[4];
 		String ic3 = "/Users/shaoyang/Desktop/ic3output/";
 
+		List<String> apks = new ArrayList<>();
+		if (System.getProperty("apk.list") != null) {
+			for (String line : Files.readAllLines(Paths.get(System.getProperty("apk.list")))) {
+				if (line.trim().length() > 0) {
+					apks.add(line.trim());
+				}
+			}
+		} else {
+			apks.add(apk);
+		}
+
+		APKCallGraph session = new APKCallGraph();
+		Runtime runtime = Runtime.getRuntime();
+		for (String name : apks) {
+			session.reset();
+			long start = System.currentTimeMillis();
+			try {
+				session.analyze(name, appPath, inputCSVPath, permissionOutput, ic3);
+			} catch (Exception e) {
+				e.printStackTrace();
+				System.out.println(name + " cannot be analyzed");
+			}
+			long used = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+			System.out.println("Finished " + name + " in " + (System.currentTimeMillis() - start) + " ms, heap used "
+					+ used + " MB of " + (runtime.totalMemory() >> 20) + " MB");
+		}
+		session.close();
+	}
+
+	public void analyze(String apk, String appPath, String inputCSVPath, String permissionOutput, String ic3) throws Exception {
 		System.out.println("Start analyze apk: " + apk + ".apk");
 
 		String apkPath = appPath + apk + ".apk";
 		int numberOfLines = 0;
 		boolean hasHandler = false;
 		String inputCSV = apk + "_img2widgets.csv";
-		File file = new File(inputCSVPath + inputCSV);
-		FileInputStream fis = new FileInputStream(file);
-		Scanner scanner = new Scanner(fis);
-		while(scanner.hasNextLine()){
-			String line = scanner.nextLine();
-			int front = line.indexOf("[");
-			int back = line.indexOf("]");
-			if ((back - front) > 1){
-				hasHandler = true;
+		// -Dimg2widgets.corpus=<file>: read the mapping from the binary corpus instead of the per-APK TSV
+		String corpusPath = System.getProperty("img2widgets.corpus");
+		List<Img2WidgetsCorpus.Row> rows = null;
+		if (corpusPath != null) {
+			if (corpus == null) {
+				corpus = new Img2WidgetsCorpus(corpusPath);
+			}
+			rows = corpus.rows(apk);
+			numberOfLines = 1;
+			for (Img2WidgetsCorpus.Row row : rows) {
 				numberOfLines ++;
-				break;
-			}else {
-				hasHandler = false;
+				if (row.handlers.size() > 0) {
+					hasHandler = true;
+					break;
+				}
+			}
+		} else {
+			File file = new File(inputCSVPath + inputCSV);
+			try (Scanner scanner = new Scanner(new FileInputStream(file))) {
+				while(scanner.hasNextLine()){
+					String line = scanner.nextLine();
+					int front = line.indexOf("[");
+					int back = line.indexOf("]");
+					if ((back - front) > 1){
+						hasHandler = true;
+						numberOfLines ++;
+						break;
+					}else {
+						hasHandler = false;
+					}
+					numberOfLines ++;
+				}
 			}
-			numberOfLines ++;
 		}
 
 		if (numberOfLines == 1){
@@ -251,7 +346,11 @@ public class APKCallGraph {
 			System.out.println("No handler found.");
 		}else {
 			generateCallGraph(apk, apkPath, ic3);
-			getHandlers(apk,inputCSVPath + inputCSV);
+			if (rows != null) {
+				getHandlers(apk, rows);
+			} else {
+				getHandlers(apk,inputCSVPath + inputCSV);
+			}
 
 			if (permMethods.size() > 0){
 				writeInfoToFile(permissionOutput, apk);
@@ -259,7 +358,14 @@ public class APKCallGraph {
 		}
 	}
 
-	public static void generateCallGraph(String apk, String apkPath, String ic3) throws IOException, XmlPullParserException {
+	public void close() throws IOException {
+		if (corpus != null) {
+			corpus.close();
+			corpus = null;
+		}
+	}
+
+	public void generateCallGraph(String apk, String apkPath, String ic3) throws IOException, XmlPullParserException {
 		/*
 		 * Soot configs
 		 * Running BFS to build call graph
@@ -291,95 +397,95 @@ public class APKCallGraph {
 		Scene.v().setEntryPoints(Collections.singletonList(entryPoint));
 
 		PackManager.v().runPacks();
+		long start = System.currentTimeMillis();
 		Chain<SootClass> applicationClasses = Scene.v().getApplicationClasses();
+		HashSet<SootMethod> applicationMethods = new HashSet<>();
 		for (SootClass sootClass : applicationClasses) {
 
 			List<SootMethod> ms = sootClass.getMethods();
 			for (SootMethod m : ms) {
-				if (methodsList.contains(m)) {
+				if (!applicationMethods.add(m)) {
 					continue;
 				}
 				methodsList.add(m);
 			}
 		}
 
-		CopyOnWriteArrayList<SootMethod> list = new CopyOnWriteArrayList<>(methodsList);
+		ArrayDeque<SootMethod> list = new ArrayDeque<>(methodsList);
 
 		while (list.size() > 0){
-			if (visited.containsKey(list.get(0)) == false){
-				if (!list.get(0).hasActiveBody()){
-					list.remove(list.get(0));
-					continue;
-				}
-				Body body = list.get(0).retrieveActiveBody();
-				Iterator<Unit> stmts = body.getUnits().iterator();
-				visited.put(list.get(0), true);
-				while (stmts.hasNext()) {
-					Stmt s = (Stmt) stmts.next();
-					if (s.toString().contains("invoke")) {
-
-						if (list.get(0).getSignature().contains("void handleMessage(android.os.Message)>")){
-							if (!handleMessageMethods.contains(list.get(0))){
-								handleMessageMethods.add(list.get(0));
-							}
+			SootMethod current = list.poll();
+			if (visited.containsKey(current)){
+				continue;
+			}
+			if (!current.hasActiveBody()){
+				continue;
+			}
+			Body body = current.retrieveActiveBody();
+			Iterator<Unit> stmts = body.getUnits().iterator();
+			visited.put(current, true);
+			String signature = current.getSignature();
+			boolean classified = false;
+			while (stmts.hasNext()) {
+				Stmt s = (Stmt) stmts.next();
+				if (s.toString().contains("invoke")) {
+
+					// only methods with an invoke statement are implicit-edge targets; the checks depend on the method alone
+					if (!classified){
+						classified = true;
+						if (signature.contains("void handleMessage(android.os.Message)>")){
+							handleMessageMethods.add(current);
 						}
 
-						if ((list.get(0).getSignature().contains("doInBackground(")) ||
-								(list.get(0).getSignature().contains("onPreExecute(")) ||
-								(list.get(0).getSignature().contains("onPostExecute("))){
-							if (!asyncExecuteMethods.contains(list.get(0))){
-								asyncExecuteMethods.add(list.get(0));
-							}
+						if ((signature.contains("doInBackground(")) ||
+								(signature.contains("onPreExecute(")) ||
+								(signature.contains("onPostExecute("))){
+							asyncExecuteMethods.add(current);
 						}
-						if (list.get(0).getSignature().contains(": void onClick(")){
-							if (!clickMethods.contains(list.get(0))){
-								clickMethods.add(list.get(0));
-							}
+						if (signature.contains(": void onClick(")){
+							clickMethods.add(current);
 						}
-						if (list.get(0).getSignature().contains(": void run()")){
-							if (list.get(0).getDeclaringClass().getSuperclass().toString().contains("java.lang.Thread")){
-								if (!threadTgt.contains(list.get(0))){
-									threadTgt.add(list.get(0));
-									if (!threadSrc.contains(list.get(0).getDeclaringClass().toString() + ": void start()>")){
-										threadSrc.add("<" + list.get(0).getDeclaringClass().toString() + ": void start()>");
-									}
+						if (signature.contains(": void run()")){
+							if (current.getDeclaringClass().getSuperclass().toString().contains("java.lang.Thread")){
+								if (threadTgt.add(current)){
+									threadTgtIndex.put(signature, threadTgtIndex.size());
+									threadSrc.add("<" + current.getDeclaringClass().toString() + ": void start()>");
 								}
 							}
 						}
+					}
 
-						try{
-							InvokeExpr expr = s.getInvokeExpr();
-							if (!edges.containsKey(list.get(0).getSignature())){
-								List<String> temp = new ArrayList<>();
-								if (expr.getMethod().getDeclaringClass().toString() == "java.lang.Thread"){
-									temp.add(expr.getMethodRef().getSignature());
-								}else {
-									temp.add(expr.getMethod().getSignature());
-								}
-
-								edges.put(list.get(0).getSignature(), temp);
-							}else if (!edges.get(list.get(0).getSignature()).contains(expr.getMethodRef().getSignature())){
-								edges.get(list.get(0).getSignature()).add(expr.getMethodRef().getSignature());
-							}
-							methodsList.add(expr.getMethod());
-							list.add(expr.getMethod());
-							if (methodToStmts.get(expr.getMethod()) != null){
-								methodToStmts.get(expr.getMethod()).add(s);
+					try{
+						InvokeExpr expr = s.getInvokeExpr();
+						if (!edges.containsKey(signature)){
+							List<String> temp = new ArrayList<>();
+							if (expr.getMethod().getDeclaringClass().toString() == "java.lang.Thread"){
+								temp.add(expr.getMethodRef().getSignature());
+							}else {
+								temp.add(expr.getMethod().getSignature());
 							}
-							else{
-								ArrayList<Stmt> temp = new ArrayList<>();
-								temp.add(s);
-								methodToStmts.put(expr.getMethod().getSignature(), temp);
-							}
-						}catch (Exception e){
-							System.out.println("getInvokeExpr() called with no invokeExpr present!");
+
+							edges.put(signature, temp);
+						}else if (!edges.get(signature).contains(expr.getMethodRef().getSignature())){
+							edges.get(signature).add(expr.getMethodRef().getSignature());
+						}
+						methodsList.add(expr.getMethod());
+						list.add(expr.getMethod());
+						if (methodToStmts.get(expr.getMethod()) != null){
+							methodToStmts.get(expr.getMethod()).add(s);
 						}
+						else{
+							ArrayList<Stmt> temp = new ArrayList<>();
+							temp.add(s);
+							methodToStmts.put(expr.getMethod().getSignature(), temp);
+						}
+					}catch (Exception e){
+						System.out.println("getInvokeExpr() called with no invokeExpr present!");
 					}
 				}
-
 			}
-			list.remove(list.get(0));
 		}
+		System.out.println("Explicit call edges built in " + (System.currentTimeMillis() - start) + " ms");
 
 
 		for (String src: edges.keySet()){
@@ -388,19 +494,19 @@ public class APKCallGraph {
 
 				if (!methods.containsKey(src)) {
 					nodeId++;
-					methods.put(src, apkg.new MethodNode(src, nodeId));
+					methods.put(src, new MethodNode(src, nodeId));
 					jg.addVertex(methods.get(src));
 				}
 
 				if (!methods.containsKey(tgt)) {
 					nodeId++;
-					methods.put(tgt, apkg.new MethodNode(tgt, nodeId));
+					methods.put(tgt, new MethodNode(tgt, nodeId));
 					jg.addVertex(methods.get(tgt));
 				}
 				MethodNode srcNode = methods.get(src);
 				MethodNode tgtNode = methods.get(tgt);
 
-				jg.addEdge(srcNode, tgtNode, apkg.new CallEdge(srcNode, tgtNode, edgeId));
+				jg.addEdge(srcNode, tgtNode, new CallEdge(srcNode, tgtNode, edgeId));
 			}
 		}
 
@@ -444,13 +550,13 @@ public class APKCallGraph {
 										|| loadMethod.getName().startsWith("onStart")) {
 									if (!methods.containsKey(loadMethod.getSignature())) {
 										nodeId++;
-										methods.put(loadMethod.getSignature(), apkg.new MethodNode(loadMethod, nodeId));
+										methods.put(loadMethod.getSignature(), new MethodNode(loadMethod, nodeId));
 										jg.addVertex(methods.get(loadMethod.getSignature()));
 									}
 
 									//edgeId++;
 									MethodNode to = methods.get(loadMethod.getSignature());
-									//jg.addEdge(from, to, apkg.new CallEdge(from, to, edgeId));
+									//jg.addEdge(from, to, new CallEdge(from, to, edgeId));
 								}
 							}
 
@@ -476,7 +582,7 @@ public class APKCallGraph {
 										temp.add(tgt);
 										edges.put(src, temp);
 									}
-									jg.addEdge(methods.get(src), methods.get(tgt), apkg.new CallEdge(methods.get(src), methods.get(tgt), edgeId++));
+									jg.addEdge(methods.get(src), methods.get(tgt), new CallEdge(methods.get(src), methods.get(tgt), edgeId++));
 								}else{
 									continue;
 								}
@@ -488,16 +594,18 @@ public class APKCallGraph {
 			}
 		}
 
+		start = System.currentTimeMillis();
 		for (String m: methods.keySet()){
 			connectThread(m);
 			connectSendMessage(m);
 			connectAsyncExecute(m);
 			connectClickCall(m);
 		}
+		System.out.println("Implicit call edges built in " + (System.currentTimeMillis() - start) + " ms");
 
 
 		DOTExporter<MethodNode, CallEdge> exporter = new DOTExporter<MethodNode, CallEdge>(
-				apkg.new MethodnodeIdProvider(), apkg.new MethodNodeNameProvider(), null);
+				new MethodnodeIdProvider(), new MethodNodeNameProvider(), null);
 		File file = new File("/Users/shaoyang/Downloads/Static_Analysis/dot_output/" + apk + "/");
 		file.mkdir();
 		exporter.exportGraph(jg, new FileWriter("/Users/shaoyang/Downloads/Static_Analysis/dot_output/" + apk + "/" + apk + ".dot"));
@@ -505,153 +613,109 @@ public class APKCallGraph {
 
 
 
-	 public static void connectThread(String src){
+	 public void connectThread(String src){
 		if (threadSrc.contains(src)){
-			MethodNode srcNode = methods.get(src);
-			int i = src.indexOf(":");
-			for (SootMethod tgt: threadTgt){
-				if (tgt.getSignature().contains(src.substring(0,i))){
-					MethodNode tgtNode = methods.get(tgt.getSignature());
-					if (edges.containsKey(src)){
-						edges.get(src).add(tgt.getSignature());
-					}else{
-						List<String> temp = new ArrayList<>();
-						temp.add(tgt.getSignature());
-						edges.put(src, temp);
-					}
-					jg.addEdge(srcNode, tgtNode, apkg.new CallEdge(srcNode, tgtNode, edgeId++));
-				}
+			// run() methods whose signature starts with "<" + the class of start()
+			String prefix = src.substring(0, src.indexOf(":"));
+			ArrayList<Entry<String, Integer>> tgts = new ArrayList<>(threadTgtIndex.subMap(prefix, prefix + Character.MAX_VALUE).entrySet());
+			tgts.sort(Entry.comparingByValue());
+			for (Entry<String, Integer> tgt: tgts){
+				addImplicitEdge(src, tgt.getKey());
 			}
 			System.out.println("Connect thread successful");
 		}
 	 }
 
-	 public static void connectClickCall(String  src){
+	 public void connectClickCall(String  src){
 		if (src.contains(": void setOnClickListener(")){
 			for (SootMethod tgt: clickMethods){
-				MethodNode srcNode = methods.get(src);
-				MethodNode tgtNode = methods.get(tgt.getSignature());
-				if (edges.containsKey(src)){
-					edges.get(src).add(tgt.getSignature());
-				}else{
-					List<String> temp = new ArrayList<>();
-					temp.add(tgt.getSignature());
-					edges.put(src, temp);
-				}
-				jg.addEdge(srcNode, tgtNode, apkg.new CallEdge(srcNode, tgtNode, edgeId++));
+				addImplicitEdge(src, tgt.getSignature());
 			}
 			System.out.println("Connect click calls successful");
 		}
 	 }
 
-	 public static void connectSendMessage(String src){
+	 public void connectSendMessage(String src){
 		if (src.contains("boolean sendMessage(android.os.Message)>")){
 			for (SootMethod tgt: handleMessageMethods){
-				MethodNode srcNode = methods.get(src);
-				MethodNode tgtNode = methods.get(tgt.getSignature());
-				if (edges.containsKey(src)){
-					edges.get(src).add(tgt.getSignature());
-				}else{
-					List<String> temp = new ArrayList<>();
-					temp.add(tgt.getSignature());
-					edges.put(src, temp);
-				}
-				jg.addEdge(srcNode, tgtNode, apkg.new CallEdge(srcNode, tgtNode, edgeId++));
+				addImplicitEdge(src, tgt.getSignature());
 			}
 			System.out.println("Connect message calls successful");
 		}
 	 }
 
-	 public static void connectAsyncExecute(String src){
+	 public void connectAsyncExecute(String src){
 		if ((src.contains("android.os.AsyncTask execute(java.lang.Object[])>")) || src.contains("AsyncTask executeOnExecutor(")){
 			for (SootMethod tgt: asyncExecuteMethods){
-				MethodNode srcNode = methods.get(src);
-				MethodNode tgtNode = methods.get(tgt.getSignature());
-				if (edges.containsKey(src)){
-					edges.get(src).add(tgt.getSignature());
-				}else{
-					List<String> temp = new ArrayList<>();
-					temp.add(tgt.getSignature());
-					edges.put(src, temp);
-				}
-				jg.addEdge(srcNode, tgtNode, apkg.new CallEdge(srcNode, tgtNode, edgeId++));
+				addImplicitEdge(src, tgt.getSignature());
 			}
 			System.out.println("Connect asynctask calls successful");
 		}
 	 }
 
-	 public static void generateSubGraphOfMethod(String apk, String method) throws IOException, SQLException {
+	 private void addImplicitEdge(String src, String tgt){
+		MethodNode srcNode = methods.get(src);
+		MethodNode tgtNode = methods.get(tgt);
+		if (edges.containsKey(src)){
+			edges.get(src).add(tgt);
+		}else{
+			List<String> temp = new ArrayList<>();
+			temp.add(tgt);
+			edges.put(src, temp);
+		}
+		jg.addEdge(srcNode, tgtNode, new CallEdge(srcNode, tgtNode, edgeId++));
+	 }
+
+	 public void generateSubGraphOfMethod(String apk, String method) throws IOException, SQLException {
 		/*
 		 * This function is used to generate subgraph of an event handler.
 		 * Each node in the subgraph will be checked if it is related to certain permissions.
+		 * Reachability is answered by the shared CallGraphReachability summary of this APK.
 		 */
-		DirectedPseudograph<APKCallGraph.MethodNode, CallEdge> subGraph = new DirectedPseudograph<>(CallEdge.class);
+		if (reachability == null){
+			reachability = new CallGraphReachability(edges, m -> getPermission(m.replace("\'", "")));
+		}
+		// edges out of startActivity are only followed for handlers that start an ICC
+		boolean followActivityEdges = afterICC.get(method) != null;
 
-		ArrayList<String> subgraph = new ArrayList<>();
+		List<Integer> sensitive = new ArrayList<>();
 		if(!methods.containsKey(method)){
 			System.out.println("Method not found, please enter again!");
 		}else {
-			HashMap<String, Boolean> hasVisited = new HashMap<>();
-			List<String> list = new ArrayList<>();
-			list.add(method);
-			hasVisited.put(method, true);
-			while (list.size() > 0) {
-				if (edges.get(list.get(0)) == null){
-					list.remove(list.get(0));
-					continue;
-				}
-
-				for (String tgt: edges.get(list.get(0))){
-					if (list.get(0).contains(": void startActivity(")){
-						if (afterICC.get(method) == null){
-							continue;
-						}
-					}
-					//System.out.println(tgt);
-					if (!subGraph.containsVertex(methods.get(list.get(0)))){
-						subGraph.addVertex(methods.get(list.get(0)));
+			if (exportSubGraphs){
+				DirectedPseudograph<APKCallGraph.MethodNode, CallEdge> subGraph = new DirectedPseudograph<>(CallEdge.class);
+				reachability.visitReachableEdges(method, followActivityEdges, (src, tgt) -> {
+					if (!subGraph.containsVertex(methods.get(src))){
+						subGraph.addVertex(methods.get(src));
 					}
 					if (!subGraph.containsVertex(methods.get(tgt))){
 						subGraph.addVertex(methods.get(tgt));
 					}
-					subGraph.addEdge(methods.get(list.get(0)), methods.get(tgt), apkg.new CallEdge(methods.get(list.get(0)), methods.get(tgt), edgeId++));
+					subGraph.addEdge(methods.get(src), methods.get(tgt), new CallEdge(methods.get(src), methods.get(tgt), edgeId++));
+				});
 
-					if (hasVisited.containsKey(tgt)){
-						continue;
-					}
-					hasVisited.put(tgt, true);
-					list.add(tgt);
-					subgraph.add(tgt);
-				}
-				list.remove(list.get(0));
+				DOTExporter<MethodNode, CallEdge> exporter = new DOTExporter<MethodNode, CallEdge>(
+						new MethodnodeIdProvider(), new MethodNodeNameProvider(), null);
+				exporter.exportGraph(subGraph, new FileWriter("/Users/shaoyang/Downloads/Static_Analysis/dot_output/" + apk + "/" + method + ".dot"));
 			}
-
-
-			DOTExporter<MethodNode, CallEdge> exporter = new DOTExporter<MethodNode, CallEdge>(
-					apkg.new MethodnodeIdProvider(), apkg.new MethodNodeNameProvider(), null);
-			exporter.exportGraph(subGraph, new FileWriter("/Users/shaoyang/Downloads/Static_Analysis/dot_output/" + apk + "/" + method + ".dot"));
+			sensitive = reachability.reachableLabelled(method, followActivityEdges);
 
 			isGenerated = true;
 
 		}
 		System.out.println("Handler---------------" + method);
 		System.out.println(".....................................................");
-		for (String m: subgraph){
-			System.out.println("Checking permissions");
-			System.out.println("Method----------------" + m);
-			String permission = getPermission(m.replace("\'", ""));
-			if (permission == null){
-				continue;
+		for (int l: sensitive){
+			String m = reachability.method(l);
+			String permission = reachability.label(l);
+			System.out.println("Method----------------" + m + " " + permission);
+			if (HdlVSPM.get(method) == null){
+				ArrayList<String> temp = new ArrayList<>();
+				temp.add(permission);
+				HdlVSPM.put(method, temp);
 			}
-			else {
-				if (HdlVSPM.get(method) == null){
-					ArrayList<String> temp = new ArrayList<>();
-					temp.add(permission);
-					HdlVSPM.put(method, temp);
-				}
-				else{
-					HdlVSPM.get(method).add(permission);
-				}
+			else{
+				HdlVSPM.get(method).add(permission);
 			}
 			if (permMethods.get(m) == null){
 				ArrayList<String> permissions = new ArrayList<>();
@@ -663,79 +727,113 @@ public class APKCallGraph {
 
 	public static String getPermission(String method) throws SQLException{
 		/*
-		 * Connect mysql PScout mapping database.
-		 * Run sql given certain APIs, and return corresponding permissions.
+		 * Look up the PScout mapping for certain APIs, and return corresponding permissions.
+		 * The mapping is loaded once: from the file given by -Dpscout.mapping if it exists, otherwise from the
+		 * mysql PScout mapping database (and then saved to that file, when one is given).
 		 */
-		Connection connection = null;
-
-		String permission = null;
-		String methodClass = method.substring(1, method.indexOf(":"));
-		String sql = "select Permission from outputmapping where Method = '" + method + "'";
-		String driver = "com.mysql.cj.jdbc.Driver";
-		String url = "jdbc:mysql://localhost:3306/APKCalls?user=root&password=jiaozhuys05311&serverTimezone=GMT";
-		try {
-			Class.forName(driver);
-			connection = DriverManager.getConnection(url);
-			Statement stmt = connection.createStatement();
-			ResultSet resultSet = stmt.executeQuery(sql);
-			if (resultSet.next() == true){
-				permission = resultSet.getString(1);
+		if (permissionIndex == null){
+			String mapping = System.getProperty("pscout.mapping");
+			try {
+				if (mapping != null && new File(mapping).exists()){
+					permissionIndex = PScoutPermissionIndex.fromFile(mapping);
+				}else {
+					permissionIndex = PScoutPermissionIndex.fromDatabase(pscoutUrl);
+					if (mapping != null){
+						permissionIndex.save(mapping);
+					}
+				}
+			} catch (IOException e) {
+				throw new SQLException("Cannot load PScout mapping " + mapping, e);
 			}
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			System.out.println("Loaded " + permissionIndex.size() + " PScout methods");
 		}
-		connection.close();
-		return permission;
+		return permissionIndex.getPermission(method);
 	}
 
 
-	public static void getHandlers(String apk, String fileName) throws IOException, SQLException {
+	// a handler as ImageToWidgetsAnalyzer writes it, "<a.B: void onClick(android.view.View)>";
+	// greedy, so that the signature of a constructor keeps its "<init>"
+	private static final Pattern HANDLER = Pattern.compile("<(.*)>");
+
+	/*
+	 * The signature of a handler without its outer angle brackets, null if it has none.
+	 * Both readers below use it, so the TSV and the corpus of an APK give the same handlers.
+	 */
+	static String handlerSignature(String handler) {
+		Matcher matcher = HANDLER.matcher(handler.trim());
+		return matcher.matches() ? matcher.group(1) : null;
+	}
+
+	public void getHandlers(String apk, String fileName) throws IOException, SQLException {
 		/*
-		 * Using regex to match event handlers.
+		 * The last column of a line lists the event handlers of the widget, "[<h1>|<h2>|]".
 		 * If handler is found, it is used to generate subgraph.
 		 */
 		System.out.println("Processing file :" + fileName);
 		try {
-			String regex = "<(.*?)>";
 			FileReader f_reader = new FileReader(fileName);
 			BufferedReader br = new BufferedReader(f_reader);
 			String line = "";
 			while ((line = br.readLine()) != null){
-				String tempLine = "";
-				Pattern pattern = Pattern.compile(regex);
-				Matcher matcher = pattern.matcher(line);
-				while (matcher.find()){
-					tempLine = line.substring(0, line.indexOf("["));
-					if (handlers.contains(matcher.group(1))){
-						if (!lineVSHdl.containsKey(tempLine)){
-							ArrayList<String> temp = new ArrayList<>();
-							temp.add("<" + matcher.group(1) + ">");
-							lineVSHdl.put(tempLine, temp);
-							continue;
-						}else{
-							lineVSHdl.get(tempLine).add("<" + matcher.group(1) + ">");
-							continue;
-						}
+				int open = line.indexOf("[");
+				int close = line.lastIndexOf("]");
+				if (open < 0 || close < open){
+					continue;
+				}
+				ArrayList<String> lineHandlers = new ArrayList<>();
+				for (String handler : line.substring(open + 1, close).split("\\|")){
+					String signature = handlerSignature(handler);
+					if (signature != null){
+						lineHandlers.add(signature);
 					}
-					handlers.add(matcher.group(1));
-					//System.out.println(line);
-					if (lineVSHdl.containsKey(tempLine) == false){
-						ArrayList<String> temp = new ArrayList<>();
-						temp.add("<" + matcher.group(1) + ">");
-						lineVSHdl.put(tempLine, temp);
-						generateSubGraphOfMethod( apk, "<" + matcher.group(1) + ">");
-					}else {
-						lineVSHdl.get(tempLine).add("<" + matcher.group(1) + ">");
-						generateSubGraphOfMethod( apk, "<" + matcher.group(1) + ">");
+				}
+				if (lineHandlers.size() > 0){
+					getHandlersOfLine(apk, line.substring(0, open), lineHandlers);
+				}
+			}
+		}catch (Exception e){
+			System.out.println(e.toString());
+		}
+	}
+
+	public void getHandlers(String apk, List<Img2WidgetsCorpus.Row> rows) throws IOException, SQLException {
+		/*
+		 * Same as above, for the rows of the binary img2widgets corpus,
+		 * which holds the same handler strings as the TSV column.
+		 */
+		System.out.println("Processing corpus rows of :" + apk);
+		try {
+			for (Img2WidgetsCorpus.Row row : rows){
+				ArrayList<String> lineHandlers = new ArrayList<>();
+				for (String handler : row.handlers){
+					String signature = handlerSignature(handler);
+					if (signature != null){
+						lineHandlers.add(signature);
 					}
 				}
+				if (lineHandlers.size() > 0){
+					getHandlersOfLine(apk, row.prefix(), lineHandlers);
+				}
 			}
 		}catch (Exception e){
 			System.out.println(e.toString());
 		}
 	}
 
-	public static void writeInfoToFile(String permissionOutput, String apkName) throws IOException {
+	private void getHandlersOfLine(String apk, String tempLine, List<String> lineHandlers) throws IOException, SQLException {
+		for (String handler : lineHandlers){
+			if (!lineVSHdl.containsKey(tempLine)){
+				lineVSHdl.put(tempLine, new ArrayList<>());
+			}
+			lineVSHdl.get(tempLine).add("<" + handler + ">");
+			if (!handlers.contains(handler)){
+				handlers.add(handler);
+				generateSubGraphOfMethod( apk, "<" + handler + ">");
+			}
+		}
+	}
+
+	public void writeInfoToFile(String permissionOutput, String apkName) throws IOException {
 		File file = new File(permissionOutput + apkName + "_permission.csv");
 		if (file.exists() == false){
 			file.createNewFile();
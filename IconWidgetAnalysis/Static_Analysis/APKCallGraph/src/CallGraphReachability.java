@@ -0,0 +1,274 @@
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/*
+ * Integer-indexed copy of the APKCallGraph edges, built once per APK, that answers the per-handler queries
+ * of generateSubGraphOfMethod without a fresh BFS over the string maps for every handler.
+ *
+ * The methods with a label (the PScout permission) are numbered 0..L-1. After a Tarjan SCC pass, every
+ * component gets the set of labelled methods reachable from it, computed sinks first, so each component is
+ * summarised once however many handlers reach it. The labelled methods reachable from a handler are then the
+ * summary of its component, minus the handler itself.
+ *
+ * generateSubGraphOfMethod does not follow the out-edges of startActivity calls unless the handler itself
+ * starts an ICC. So there are two summaries, with and without those edges, each built the first time a
+ * handler needs it.
+ */
+public class CallGraphReachability {
+
+	public interface Labeler {
+		String label(String method) throws SQLException;
+	}
+
+	public interface EdgeVisitor {
+		void edge(String src, String tgt);
+	}
+
+	private final String[] names;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	// CSR adjacency in the order of the edge lists, duplicates kept
+	private final int[] offsets;
+	private final int[] targets;
+	private final boolean[] startsActivity;
+
+	private final Labeler labeler;
+	private String[] labels;
+	private int[] labelled;
+	private int[] labelledNodes;
+
+	private Summary withActivityEdges;
+	private Summary withoutActivityEdges;
+
+	// BFS scratch space, reused by every query
+	private int[] mark;
+	private int stamp;
+	private int[] queue;
+
+	class Summary {
+		int[] component;
+		BitSet[] reachable;
+	}
+
+	public CallGraphReachability(HashMap<String, List<String>> edges, Labeler labeler) {
+		this.labeler = labeler;
+		ArrayList<String> nodes = new ArrayList<>();
+		int edgeCount = 0;
+		for (Entry<String, List<String>> e : edges.entrySet()) {
+			id(e.getKey(), nodes);
+			for (String tgt : e.getValue()) {
+				id(tgt, nodes);
+				edgeCount++;
+			}
+		}
+		int n = nodes.size();
+		names = nodes.toArray(new String[n]);
+		offsets = new int[n + 1];
+		targets = new int[edgeCount];
+		startsActivity = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			List<String> tgts = edges.get(names[i]);
+			offsets[i + 1] = offsets[i] + (tgts == null ? 0 : tgts.size());
+			startsActivity[i] = names[i].contains(": void startActivity(");
+		}
+		for (int i = 0; i < n; i++) {
+			List<String> tgts = edges.get(names[i]);
+			if (tgts != null) {
+				int k = offsets[i];
+				for (String tgt : tgts) {
+					targets[k++] = ids.get(tgt);
+				}
+			}
+		}
+		mark = new int[n];
+		queue = new int[n];
+	}
+
+	private void id(String name, ArrayList<String> nodes) {
+		if (!ids.containsKey(name)) {
+			ids.put(name, nodes.size());
+			nodes.add(name);
+		}
+	}
+
+	public boolean contains(String method) {
+		return ids.containsKey(method);
+	}
+
+	public String label(int labelIndex) {
+		return labels[labelledNodes[labelIndex]];
+	}
+
+	public String method(int labelIndex) {
+		return names[labelledNodes[labelIndex]];
+	}
+
+	/*
+	 * Indexes (for method() / label()) of the labelled methods reachable from "method", not counting
+	 * "method" itself.
+	 */
+	public List<Integer> reachableLabelled(String method, boolean followActivityEdges) throws SQLException {
+		List<Integer> result = new ArrayList<>();
+		Integer start = ids.get(method);
+		if (start == null) {
+			return result;
+		}
+		Summary summary = summary(followActivityEdges);
+		BitSet reachable = summary.reachable[summary.component[start]];
+		for (int l = reachable.nextSetBit(0); l >= 0; l = reachable.nextSetBit(l + 1)) {
+			if (labelledNodes[l] != start) {
+				result.add(l);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Visits the edges generateSubGraphOfMethod puts into the DOT subgraph of "method": every out-edge of
+	 * every method reached from it, in BFS order.
+	 */
+	public void visitReachableEdges(String method, boolean followActivityEdges, EdgeVisitor visitor) {
+		Integer start = ids.get(method);
+		if (start == null) {
+			return;
+		}
+		stamp++;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		mark[start] = stamp;
+		while (head < tail) {
+			int u = queue[head++];
+			if (startsActivity[u] && !followActivityEdges) {
+				continue;
+			}
+			for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+				int v = targets[k];
+				visitor.edge(names[u], names[v]);
+				if (mark[v] != stamp) {
+					mark[v] = stamp;
+					queue[tail++] = v;
+				}
+			}
+		}
+	}
+
+	private Summary summary(boolean followActivityEdges) throws SQLException {
+		if (labels == null) {
+			int n = names.length;
+			labels = new String[n];
+			labelled = new int[n];
+			ArrayList<Integer> nodes = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				labels[i] = labeler.label(names[i]);
+				labelled[i] = -1;
+				if (labels[i] != null) {
+					labelled[i] = nodes.size();
+					nodes.add(i);
+				}
+			}
+			labelledNodes = new int[nodes.size()];
+			for (int l = 0; l < labelledNodes.length; l++) {
+				labelledNodes[l] = nodes.get(l);
+			}
+		}
+		if (followActivityEdges) {
+			if (withActivityEdges == null) {
+				withActivityEdges = summarize(true);
+			}
+			return withActivityEdges;
+		}
+		if (withoutActivityEdges == null) {
+			withoutActivityEdges = summarize(false);
+		}
+		return withoutActivityEdges;
+	}
+
+	/*
+	 * Iterative Tarjan. Components are completed sinks first, so the successors of a component are already
+	 * summarised when it is completed.
+	 */
+	private Summary summarize(boolean followActivityEdges) {
+		int n = names.length;
+		int[] index = new int[n];
+		int[] low = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callStack = new int[n];
+		int[] edgePos = new int[n];
+		int[] component = new int[n];
+		ArrayList<BitSet> reachable = new ArrayList<>();
+		Arrays.fill(index, -1);
+		int counter = 0;
+		int sp = 0;
+
+		for (int root = 0; root < n; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			int csp = 0;
+			callStack[csp++] = root;
+			index[root] = low[root] = counter++;
+			stack[sp++] = root;
+			onStack[root] = true;
+			edgePos[root] = offsets[root];
+			while (csp > 0) {
+				int u = callStack[csp - 1];
+				int end = startsActivity[u] && !followActivityEdges ? offsets[u] : offsets[u + 1];
+				if (edgePos[u] < end) {
+					int v = targets[edgePos[u]++];
+					if (index[v] < 0) {
+						index[v] = low[v] = counter++;
+						stack[sp++] = v;
+						onStack[v] = true;
+						edgePos[v] = offsets[v];
+						callStack[csp++] = v;
+					} else if (onStack[v]) {
+						low[u] = Math.min(low[u], index[v]);
+					}
+					continue;
+				}
+				csp--;
+				if (csp > 0) {
+					int parent = callStack[csp - 1];
+					low[parent] = Math.min(low[parent], low[u]);
+				}
+				if (low[u] == index[u]) {
+					int c = reachable.size();
+					BitSet bits = new BitSet();
+					int first = sp;
+					int w;
+					do {
+						w = stack[--sp];
+						onStack[w] = false;
+						component[w] = c;
+					} while (w != u);
+					for (int i = sp; i < first; i++) {
+						int m = stack[i];
+						if (labelled[m] >= 0) {
+							bits.set(labelled[m]);
+						}
+						int mend = startsActivity[m] && !followActivityEdges ? offsets[m] : offsets[m + 1];
+						for (int k = offsets[m]; k < mend; k++) {
+							int d = component[targets[k]];
+							if (d != c) {
+								bits.or(reachable.get(d));
+							}
+						}
+					}
+					reachable.add(bits);
+				}
+			}
+		}
+
+		Summary summary = new Summary();
+		summary.component = component;
+		summary.reachable = reachable.toArray(new BitSet[reachable.size()]);
+		return summary;
+	}
+}
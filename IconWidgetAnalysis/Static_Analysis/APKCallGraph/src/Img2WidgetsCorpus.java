@@ -0,0 +1,104 @@
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+ * Read side of the binary img2widgets corpus written by ImageToWidgetsAnalyzer (Img2WidgetsCorpusWriter),
+ * see there for the block layout. The index is loaded once; the block of an APK is memory-mapped when it is
+ * queried, so only the strings of that APK are decoded.
+ */
+public class Img2WidgetsCorpus implements AutoCloseable {
+	public static final int MAGIC = 0x49325742;
+
+	private final RandomAccessFile file;
+	private final HashMap<String, long[]> index = new HashMap<>();
+
+	class Row {
+		String apk;
+		String image;
+		long wid;
+		String widName;
+		String layout;
+		List<String> handlers = new ArrayList<>();
+
+		// the leading columns of the TSV line, as used for lineVSHdl keys
+		public String prefix() {
+			return apk + "\t" + image + "\t" + wid + "\t" + widName + "\t" + layout + "\t";
+		}
+	}
+
+	public Img2WidgetsCorpus(String path) throws IOException {
+		for (String line : Files.readAllLines(Paths.get(path + ".idx"))) {
+			String[] fields = line.split("\t");
+			if (fields.length == 3) {
+				index.put(fields[0], new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+			}
+		}
+		file = new RandomAccessFile(path, "r");
+	}
+
+	public boolean contains(String apk) {
+		return index.containsKey(apk);
+	}
+
+	public List<Row> rows(String apk) throws IOException {
+		List<Row> rows = new ArrayList<>();
+		long[] entry = index.get(apk);
+		if (entry == null) {
+			return rows;
+		}
+		MappedByteBuffer block = file.getChannel().map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]);
+		if (block.getInt() != MAGIC) {
+			throw new IOException("Corrupted img2widgets block for " + apk);
+		}
+		String[] strings = new String[block.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] utf8 = new byte[block.getInt()];
+			block.get(utf8);
+			strings[i] = new String(utf8, StandardCharsets.UTF_8);
+		}
+		String apkName = strings[block.getInt()];
+		int n = block.getInt();
+		for (int r = 0; r < n; r++) {
+			Row row = new Row();
+			row.apk = apkName;
+			rows.add(row);
+		}
+		for (Row row : rows) {
+			row.image = strings[block.getInt()];
+		}
+		for (Row row : rows) {
+			row.wid = block.getLong();
+		}
+		for (Row row : rows) {
+			row.widName = strings[block.getInt()];
+		}
+		for (Row row : rows) {
+			row.layout = strings[block.getInt()];
+		}
+		int[] offsets = new int[n + 1];
+		for (int r = 0; r <= n; r++) {
+			offsets[r] = block.getInt();
+		}
+		int handlerBase = block.position() + 4;
+		for (int r = 0; r < n; r++) {
+			for (int h = offsets[r]; h < offsets[r + 1]; h++) {
+				rows.get(r).handlers.add(strings[block.getInt(handlerBase + 4 * h)]);
+			}
+		}
+		return rows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,91 @@
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+
+/*
+ * In-memory copy of the PScout "outputmapping" table (API method signature -> permission).
+ * It is imported from MySQL with a single query, or loaded from a "method\tpermission" file saved by an
+ * earlier import, so permission lookups are a hash probe and need no database.
+ * Like the per-method SQL query it replaces, a method mapped to several permissions reports the first row.
+ */
+public class PScoutPermissionIndex {
+
+	private final HashMap<String, String> method2permission = new HashMap<>();
+	// a few hundred distinct permissions are shared by all methods
+	private final HashMap<String, String> permissions = new HashMap<>();
+
+	public static PScoutPermissionIndex fromDatabase(String url) throws SQLException {
+		PScoutPermissionIndex index = new PScoutPermissionIndex();
+		try {
+			Class.forName("com.mysql.cj.jdbc.Driver");
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+		try (Connection connection = DriverManager.getConnection(url);
+				Statement stmt = connection.createStatement();
+				ResultSet resultSet = stmt.executeQuery("select Method, Permission from outputmapping")) {
+			while (resultSet.next()) {
+				index.add(resultSet.getString(1), resultSet.getString(2));
+			}
+		}
+		return index;
+	}
+
+	public static PScoutPermissionIndex fromFile(String path) throws IOException {
+		PScoutPermissionIndex index = new PScoutPermissionIndex();
+		try (BufferedReader br = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int tab = line.indexOf('\t');
+				if (tab > 0) {
+					index.add(line.substring(0, tab), line.substring(tab + 1));
+				}
+			}
+		}
+		return index;
+	}
+
+	public void save(String path) throws IOException {
+		try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+			for (String method : method2permission.keySet()) {
+				if (method2permission.get(method) == null) {
+					continue;
+				}
+				bw.write(method + "\t" + method2permission.get(method) + "\n");
+			}
+		}
+	}
+
+	private void add(String method, String permission) {
+		if (method == null || method2permission.containsKey(method)) {
+			return;
+		}
+		if (permission != null) {
+			String shared = permissions.get(permission);
+			if (shared == null) {
+				permissions.put(permission, permission);
+			} else {
+				permission = shared;
+			}
+		}
+		method2permission.put(method, permission);
+	}
+
+	public String getPermission(String method) {
+		return method2permission.get(method);
+	}
+
+	public int size() {
+		return method2permission.size();
+	}
+}
@@ -0,0 +1,170 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one analysis per APK on a fixed pool of worker threads, with a
+ * per-APK wall-clock budget and a ledger of "apk\tstatus\tmillis" lines.
+ * Used by ImageToWidgetsAnalyzer; WidImageResolver has the same runner for
+ * WidgetIDIconMappingMain, as this module is built into its own jar.
+ *
+ * When an APK runs out of time its worker thread is interrupted. The
+ * analysis is expected to check Thread.interrupted() in its loops and give
+ * up, and the worker only takes the next APK once it has. So at most
+ * "threads" analyses ever run at once, timed out or not.
+ *
+ * The status of an APK is what analyze() returned, "timeout" if it was
+ * interrupted for its budget, and "failed" if it threw otherwise.
+ */
+public class ApkBatch {
+
+	public interface Analysis {
+		/**
+		 * Analyzes one APK on a worker thread.
+		 *
+		 * @return the status for the ledger, "ok" if it succeeded
+		 */
+		String analyze(String apk) throws Exception;
+	}
+
+	private final String ledgerPath;
+	private final int threads;
+	private final long timeoutMinutes;
+
+	public ApkBatch(String ledgerPath, int threads, long timeoutMinutes) {
+		this.ledgerPath = ledgerPath;
+		this.threads = Math.max(1, threads);
+		this.timeoutMinutes = timeoutMinutes;
+	}
+
+	/**
+	 * @return the APKs whose last line in the ledger has one of the given
+	 *         statuses
+	 */
+	public static Set<String> finished(String ledgerPath, String... statuses) throws IOException {
+		Map<String, String> lastStatus = new HashMap<>();
+		if (Files.exists(Paths.get(ledgerPath))) {
+			for (String line : Files.readAllLines(Paths.get(ledgerPath))) {
+				String[] fields = line.split("\t");
+				if (fields.length > 1) {
+					lastStatus.put(fields[0], fields[1]);
+				}
+			}
+		}
+		Set<String> wanted = new HashSet<>(Arrays.asList(statuses));
+		Set<String> finished = new HashSet<>();
+		for (Map.Entry<String, String> e : lastStatus.entrySet()) {
+			if (wanted.contains(e.getValue())) {
+				finished.add(e.getKey());
+			}
+		}
+		return finished;
+	}
+
+	/**
+	 * Analyzes the APKs and waits for all of them.
+	 *
+	 * @return the number of APKs with status "ok"
+	 */
+	public int run(List<String> apks, Analysis analysis) throws IOException, InterruptedException {
+		final ExecutorService service = Executors.newFixedThreadPool(threads);
+		final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+		final PrintWriter ledger = new PrintWriter(new FileWriter(ledgerPath, true));
+		final long start = System.currentTimeMillis();
+		final AtomicInteger done = new AtomicInteger();
+		final AtomicInteger succeeded = new AtomicInteger();
+		final int total = apks.size();
+
+		for (String apk : apks) {
+			service.execute(() -> {
+				long taskStart = System.currentTimeMillis();
+				Deadline deadline = new Deadline(Thread.currentThread());
+				ScheduledFuture<?> alarm = watchdog.schedule(deadline::expire, timeoutMinutes, TimeUnit.MINUTES);
+				String status;
+				try {
+					status = analysis.analyze(apk);
+				} catch (Throwable e) {
+					if (!deadline.expired()) {
+						e.printStackTrace();
+					}
+					status = "failed";
+				} finally {
+					alarm.cancel(false);
+					deadline.finish();
+				}
+				if (deadline.expired()) {
+					status = "timeout";
+				}
+				long elapsed = System.currentTimeMillis() - taskStart;
+				synchronized (ledger) {
+					ledger.println(apk + "\t" + status + "\t" + elapsed);
+					ledger.flush();
+				}
+				if ("ok".equals(status)) {
+					succeeded.incrementAndGet();
+				} else {
+					System.err.println(apk + " cannot be analyzed (" + status + ")");
+				}
+				int n = done.incrementAndGet();
+				double minutes = (System.currentTimeMillis() - start) / 60000.0;
+				System.out.println(String.format("[%d/%d] %s %s in %d ms, %.1f APKs/min", n, total, apk, status,
+						elapsed, minutes > 0 ? n / minutes : 0.0));
+			});
+		}
+
+		service.shutdown();
+		try {
+			service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} finally {
+			watchdog.shutdownNow();
+			ledger.close();
+		}
+		double minutes = (System.currentTimeMillis() - start) / 60000.0;
+		System.out.println(String.format("Analyzed %d APKs (%d ok) in %.1f min, %.1f APKs/min", total,
+				succeeded.get(), minutes, minutes > 0 ? total / minutes : 0.0));
+		return succeeded.get();
+	}
+
+	// Interrupts the worker for its budget, unless the APK has finished: a
+	// late interrupt must not hit the next APK on the same thread.
+	private static class Deadline {
+		private final Thread worker;
+		private boolean finished;
+		private boolean expired;
+
+		Deadline(Thread worker) {
+			this.worker = worker;
+		}
+
+		synchronized void expire() {
+			if (!finished) {
+				expired = true;
+				worker.interrupt();
+			}
+		}
+
+		synchronized boolean expired() {
+			return expired;
+		}
+
+		synchronized void finish() {
+			finished = true;
+			// clear an interrupt that arrived after the analysis returned
+			Thread.interrupted();
+		}
+	}
+}
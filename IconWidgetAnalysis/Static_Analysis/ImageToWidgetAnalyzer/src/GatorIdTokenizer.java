@@ -0,0 +1,77 @@
+
+
+/*
+ * Single-pass parser for the id nodes GATOR writes into view, window and image names
+ * (NIdNode.toString(): TAG[<id>|<name>]<node>, e.g. "DrawableID[2130837509|drawable_btn_next]585").
+ * find() scans for the tag, parses the id into a primitive and only records where the name is, so
+ * matching a token allocates nothing; name() / nameAfter() create the one String the caller keeps.
+ * An instance is reused for every token and is not thread-safe.
+ */
+public class GatorIdTokenizer {
+
+	public static final String WID = "WID[";
+	public static final String LID = "LID[";
+	public static final String DRAWABLE_ID = "DrawableID[";
+
+	private String source;
+	private long id;
+	private int nameStart;
+	private int nameEnd;
+
+	/*
+	 * Looks for the first "tag" (e.g. WID) in s. Returns false when s has no such token; throws
+	 * NumberFormatException when the token is there but its id is not a number.
+	 */
+	public boolean find(String s, String tag) {
+		int start = s.indexOf(tag);
+		if (start < 0) {
+			return false;
+		}
+		int pos = start + tag.length();
+		int end = s.length();
+		boolean negative = pos < end && s.charAt(pos) == '-';
+		if (negative) {
+			pos++;
+		}
+		int digits = pos;
+		long value = 0;
+		while (pos < end) {
+			char c = s.charAt(pos);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			value = value * 10 + (c - '0');
+			pos++;
+		}
+		if (pos == digits || (pos < end && s.charAt(pos) != '|' && s.charAt(pos) != ']')) {
+			throw new NumberFormatException("Malformed id in " + s);
+		}
+		int nameFrom = pos < end && s.charAt(pos) == '|' ? pos + 1 : pos;
+		int nameTo = nameFrom;
+		while (nameTo < end && s.charAt(nameTo) != '|' && s.charAt(nameTo) != ']') {
+			nameTo++;
+		}
+		this.source = s;
+		this.id = negative ? -value : value;
+		this.nameStart = nameFrom;
+		this.nameEnd = nameTo;
+		return true;
+	}
+
+	public long id() {
+		return id;
+	}
+
+	public String name() {
+		return source.substring(nameStart, nameEnd);
+	}
+
+	public boolean nameStartsWith(String prefix) {
+		return nameEnd - nameStart >= prefix.length() && source.startsWith(prefix, nameStart);
+	}
+
+	// the name without its first "prefix" characters, e.g. nameAfter("drawable_") for the image name
+	public String nameAfter(String prefix) {
+		return source.substring(Math.min(nameStart + prefix.length(), nameEnd), nameEnd);
+	}
+}
@@ -0,0 +1,86 @@
+
+
+import org.json.simple.JSONArray;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Times the split()-based id extraction ImageToWidgetsAnalyzer used to do against GatorIdTokenizer, over the
+ * window, view and image names found in real GATOR outputs.
+ * Usage: GatorIdTokenizerBenchmark <gator .apk.json>... (iterations with -Diterations=N, default 200)
+ */
+public class GatorIdTokenizerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		List<String> names = new ArrayList<>();
+		for (String file : args) {
+			JSONRecordReader.read(Files.newBufferedReader(Paths.get(file)), 4, "name", (view, window) -> {
+				names.add((String) window.get("name"));
+				names.add((String) view.get("name"));
+				for (Object image : (JSONArray) view.get("images")) {
+					names.add((String) image);
+				}
+			});
+		}
+		int iterations = Integer.getInteger("iterations", 200);
+		System.out.println(names.size() + " names, " + iterations + " iterations");
+
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			long check = 0;
+			for (int i = 0; i < iterations; i++) {
+				for (String name : names) {
+					check += splitting(name);
+				}
+			}
+			long split = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			GatorIdTokenizer ids = new GatorIdTokenizer();
+			long check2 = 0;
+			for (int i = 0; i < iterations; i++) {
+				for (String name : names) {
+					check2 += tokenizing(ids, name);
+				}
+			}
+			long tokenizer = System.nanoTime() - start;
+			long tokens = (long) iterations * names.size();
+			System.out.println(String.format("round %d: split %.1f ns/name, tokenizer %.1f ns/name%s", round,
+					(double) split / tokens, (double) tokenizer / tokens, check == check2 ? "" : " (MISMATCH)"));
+		}
+	}
+
+	private static long splitting(String name) {
+		long sum = 0;
+		if (name.contains("LID[")) {
+			String layoutString = name.split("LID\\[")[1].split("\\]")[0];
+			sum += Long.parseLong(layoutString.split("\\|")[0]) + layoutString.split("\\|")[1].length();
+		}
+		if (name.contains("WID[")) {
+			String widstring = name.split("WID\\[")[1].split("\\]")[0];
+			sum += Long.parseLong(widstring.split("\\|")[0]) + widstring.split("\\|")[1].length();
+		}
+		if (name.startsWith("DrawableID[")) {
+			sum += Long.parseLong(name.split("\\[")[1].split("\\|")[0])
+					+ name.split("\\[")[1].split("\\|")[1].split("\\]")[0].length();
+		}
+		return sum;
+	}
+
+	private static long tokenizing(GatorIdTokenizer ids, String name) {
+		long sum = 0;
+		if (ids.find(name, GatorIdTokenizer.LID)) {
+			sum += ids.id() + ids.name().length();
+		}
+		if (ids.find(name, GatorIdTokenizer.WID)) {
+			sum += ids.id() + ids.name().length();
+		}
+		if (ids.find(name, GatorIdTokenizer.DRAWABLE_ID)) {
+			sum += ids.id() + ids.name().length();
+		}
+		return sum;
+	}
+}
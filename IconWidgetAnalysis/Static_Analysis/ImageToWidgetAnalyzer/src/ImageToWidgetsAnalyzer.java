@@ -4,26 +4,39 @@ import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 public class ImageToWidgetsAnalyzer {
 
+	// one "apk\tstatus\tmillis" line per analyzed APK; a restarted run skips the APKs whose last status is
+	// ok or nogator and retries the ones that timed out or failed
+	public static final String MANIFEST_NAME = "img2widgets.manifest";
+	public static final int DEFAULT_TIMEOUT_MINUTES = 10;
+
+	private Img2WidgetsCorpusWriter corpus;
+
 	public static void main(String[] args) throws Exception {
 
 		String widimages = args[0];
 		String gator = args[1];
 		String outputfolder =  args[2] + "img2widgets/";
 		List<String> apks = Files.readAllLines(Paths.get( args[3]));
+		// optional: number of APKs in flight, per-APK timeout in minutes
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		long timeout = args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_TIMEOUT_MINUTES;
 		ImageToWidgetsAnalyzer analyzer = new ImageToWidgetsAnalyzer();
-		analyzer.generateImageToMethods(apks,widimages, gator, outputfolder);
+		// -Dimg2widgets.corpus=<file>: append to a binary corpus instead of writing one TSV per APK
+		if (System.getProperty("img2widgets.corpus") != null) {
+			analyzer.corpus = new Img2WidgetsCorpusWriter(System.getProperty("img2widgets.corpus"));
+		}
+		analyzer.generateImageToMethods(apks,widimages, gator, outputfolder, threads, timeout);
 		System.out.println("Finish the image to method mapping generation.");
 	}
 
@@ -34,8 +47,14 @@ public class ImageToWidgetsAnalyzer {
 		private JSONParser parser = new JSONParser();
 		private String gator;
 		private String outputfolder;
-		private HashMap<ImageData, HashSet<WidgetID>> img2widgets = new HashMap<>();
+		HashMap<ImageData, HashSet<WidgetID>> img2widgets = new HashMap<>();
 		public HashMap<WidgetID, Set<String>> w2handlers;
+		private HashMap<ImageData, HashSet<ImageData>> imagegroupmap = new HashMap<>();
+		// read the three JSON inputs record by record instead of building the whole document
+		private boolean streaming = true;
+		private String lastWindow;
+		private String lastLayout;
+		private GatorIdTokenizer ids = new GatorIdTokenizer();
 
 		public APKTask(String widimages, String apk, String gator, String outputfolder) {
 			super();
@@ -45,134 +64,70 @@ public class ImageToWidgetsAnalyzer {
 			this.outputfolder = outputfolder;
 		}
 
+		public APKTask(String widimages, String apk, String gator, String outputfolder, boolean streaming) {
+			this(widimages, apk, gator, outputfolder);
+			this.streaming = streaming;
+		}
+
 		@Override
 		public Integer call() throws Exception {
 			try {
-				String widjson = new String(Files.readAllBytes(Paths.get(widimages + "/" + apk + ".json")));
-				JSONArray xml2images = (JSONArray) parser.parse(widjson);
-				for (Object x : xml2images) {
-					JSONObject xml = (JSONObject) x;
-					JSONArray tags = (JSONArray) xml.get("tags");
-					String layout = (String) xml.get("name");
-					if (tags.size() > 0) {
+				Path widjson = Paths.get(widimages + "/" + apk + ".json");
+				if (streaming) {
+					JSONRecordReader.read(Files.newBufferedReader(widjson), 4, "name",
+							(tag, xml) -> handleTag((String) xml.get("name"), tag));
+				} else {
+					JSONArray xml2images = (JSONArray) parser.parse(new String(Files.readAllBytes(widjson)));
+					for (Object x : xml2images) {
+						JSONObject xml = (JSONObject) x;
+						JSONArray tags = (JSONArray) xml.get("tags");
+						String layout = (String) xml.get("name");
 						for (Object y : tags) {
-							JSONObject tag = (JSONObject) y;
-							long tagid = (Long) tag.get("id");
-							if (tag.get("idName") == null) {
-								continue;
-							}
-							String tagIdName = ((String) tag.get("idName")).substring(3);
-							WidgetID wid = new WidgetID(tagid, tagIdName, layout);
-							JSONArray imgs = (JSONArray) tag.get("imgs");
-							for (Object z : imgs) {
-								JSONObject img = (JSONObject) z;
-								if (!((String) img.get("attribute")).equals("background")) {
-									String drawable = ((String) img.get("value")).substring(9);
-									ImageData i = new ImageData(apk, drawable);
-									if (!img2widgets.containsKey(i)) {
-										img2widgets.put(i, new HashSet<WidgetID>());
-									}
-									img2widgets.get(i).add(wid);
-								}
-							}
+							handleTag(layout, (JSONObject) y);
 						}
 					}
 				}
 
 				// gator
-				if (!Files.exists(Paths.get(gator + "/" + apk + ".apk.json"))) {
+				Path gatorjson = Paths.get(gator + "/" + apk + ".apk.json");
+				if (!Files.exists(gatorjson)) {
 					return 1;
 				}
 
 				try {
-					String gatorjson = new String(Files.readAllBytes(Paths.get(gator + "/" + apk + ".apk.json")));
-					JSONArray view2handlers = (JSONArray) parser.parse(gatorjson);
 					w2handlers = new HashMap<>();
-					for (Object x : view2handlers) {
-						JSONObject v2handler = (JSONObject) x;
-						JSONArray views = (JSONArray) v2handler.get("views");
-						String windowname = (String) v2handler.get("name");
-						String layoutname = "gator";
-						if (windowname.contains("LID")) {
-							String layoutString = windowname.split("LID\\[")[1].split("\\]")[0];
-							Long layoutid = Long.parseLong(layoutString.split("\\|")[0]);
-							layoutname = layoutString.split("\\|")[1];
-							layoutname = layoutname.replace("layout_", "") + ".xml";
-							System.out.println("layoutname:" + layoutname);
-						}
-
-						for (Object y : views) {
-							JSONObject view = (JSONObject) y;
-							String viewname = (String) view.get("name");
-							System.out.println("viewname: " + viewname);
-							if (viewname.contains("WID[")) {
-								String widstring = viewname.split("WID\\[")[1].split("\\]")[0];
-								Long wid = Long.parseLong(widstring.split("\\|")[0]);
-								String widname = widstring.split("\\|")[1];
-								WidgetID nwid = new WidgetID(wid, widname, layoutname);
-								if (!w2handlers.containsKey(nwid)) {
-									w2handlers.put(nwid, new HashSet<>());
-								}
-
-								JSONArray handlers = (JSONArray) view.get("handlers");
-								for (Object z : handlers) {
-									JSONObject e2handlers = (JSONObject) z;
-
-									for (Object k : (JSONArray) e2handlers.get("handlers")) {
-										w2handlers.get(nwid).add((String) k);
-									}
-
-								}
-
-								JSONArray w2images = (JSONArray) view.get("images");
-								for (Object z : w2images) {
-									String drawableimageid = (String) z; // "DrawableID[2130837509|drawable_btn_next]585",
-									Long imageid = Long.parseLong(drawableimageid.split("\\[")[1].split("\\|")[0]);
-									String imagename = drawableimageid.split("\\[")[1].split("\\|")[1].split("\\]")[0];
-									if (imagename.startsWith("drawable_")) {
-										imagename = imagename.substring(9);
-										ImageData i = new ImageData(apk, imagename);
-										if (!img2widgets.containsKey(i)) {
-											img2widgets.put(i, new HashSet<>());
-										}
-										img2widgets.get(i).add(nwid);
-									}
-								}
+					if (streaming) {
+						JSONRecordReader.read(Files.newBufferedReader(gatorjson), 4, "name",
+								(view, window) -> handleView((String) window.get("name"), view));
+					} else {
+						JSONArray view2handlers = (JSONArray) parser.parse(new String(Files.readAllBytes(gatorjson)));
+						for (Object x : view2handlers) {
+							JSONObject v2handler = (JSONObject) x;
+							JSONArray views = (JSONArray) v2handler.get("views");
+							String windowname = (String) v2handler.get("name");
+							for (Object y : views) {
+								handleView(windowname, (JSONObject) y);
 							}
 						}
-
 					}
+				} catch (InterruptedException e) {
+					throw e;
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
 
-				String widimagejson = new String(Files.readAllBytes(Paths.get(widimages + "/" + apk + ".image.json")));
-				JSONArray r2images = (JSONArray) parser.parse(widimagejson);
-				HashMap<ImageData, HashSet<ImageData>> imagegroupmap = new HashMap<>();
-
-				for (Object x : r2images) {
-					JSONObject r2image = (JSONObject) x;
-					String rname = (String) r2image.get("name");
-					ImageData i = new ImageData(apk, rname);
-					JSONArray rimages = (JSONArray) r2image.get("images");
-					HashSet<ImageData> rimageset = new HashSet<>();
-					rimageset.add(i);
-					imagegroupmap.put(i, rimageset);
-					for (Object y : rimages) {
-						String imagename = (String) y;
-						ImageData e = new ImageData(apk, imagename);
-						rimageset.add(e);
-						imagegroupmap.put(e, rimageset);
-					}
-
-					if (img2widgets.containsKey(i)) {
-						HashSet<WidgetID> widset = img2widgets.get(i);
-						for (Object y : rimages) {
-							String imagename = (String) y;
-							img2widgets.put(new ImageData(apk, imagename), widset);
-						}
+				Path widimagejson = Paths.get(widimages + "/" + apk + ".image.json");
+				if (streaming) {
+					JSONRecordReader.read(Files.newBufferedReader(widimagejson), 2, null,
+							(r2image, none) -> handleImageGroup(r2image));
+				} else {
+					JSONArray r2images = (JSONArray) parser.parse(new String(Files.readAllBytes(widimagejson)));
+					for (Object x : r2images) {
+						handleImageGroup((JSONObject) x);
 					}
 				}
+			} catch (InterruptedException e) {
+				throw e;
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -180,46 +135,166 @@ public class ImageToWidgetsAnalyzer {
 
 		}
 
+		private void handleTag(String layout, JSONObject tag) throws InterruptedException {
+			checkInterrupted();
+			long tagid = (Long) tag.get("id");
+			if (tag.get("idName") == null) {
+				return;
+			}
+			String tagIdName = ((String) tag.get("idName")).substring(3);
+			WidgetID wid = new WidgetID(tagid, tagIdName, layout);
+			JSONArray imgs = (JSONArray) tag.get("imgs");
+			for (Object z : imgs) {
+				JSONObject img = (JSONObject) z;
+				if (!((String) img.get("attribute")).equals("background")) {
+					String drawable = ((String) img.get("value")).substring(9);
+					ImageData i = new ImageData(apk, drawable);
+					if (!img2widgets.containsKey(i)) {
+						img2widgets.put(i, new HashSet<WidgetID>());
+					}
+					img2widgets.get(i).add(wid);
+				}
+			}
+		}
+
+		private void handleView(String windowname, JSONObject view) throws InterruptedException {
+			checkInterrupted();
+			if (!windowname.equals(lastWindow)) {
+				lastWindow = windowname;
+				lastLayout = "gator";
+				if (ids.find(windowname, GatorIdTokenizer.LID)) {
+					lastLayout = ids.name().replace("layout_", "") + ".xml";
+					System.out.println("layoutname:" + lastLayout);
+				}
+			}
+			String layoutname = lastLayout;
+
+			String viewname = (String) view.get("name");
+			System.out.println("viewname: " + viewname);
+			if (ids.find(viewname, GatorIdTokenizer.WID)) {
+				WidgetID nwid = new WidgetID(ids.id(), ids.name(), layoutname);
+				if (!w2handlers.containsKey(nwid)) {
+					w2handlers.put(nwid, new HashSet<>());
+				}
+
+				JSONArray handlers = (JSONArray) view.get("handlers");
+				for (Object z : handlers) {
+					JSONObject e2handlers = (JSONObject) z;
+
+					for (Object k : (JSONArray) e2handlers.get("handlers")) {
+						w2handlers.get(nwid).add((String) k);
+					}
+
+				}
+
+				JSONArray w2images = (JSONArray) view.get("images");
+				for (Object z : w2images) {
+					String drawableimageid = (String) z; // "DrawableID[2130837509|drawable_btn_next]585",
+					if (ids.find(drawableimageid, GatorIdTokenizer.DRAWABLE_ID) && ids.nameStartsWith("drawable_")) {
+						String imagename = ids.nameAfter("drawable_");
+						ImageData i = new ImageData(apk, imagename);
+						if (!img2widgets.containsKey(i)) {
+							img2widgets.put(i, new HashSet<>());
+						}
+						img2widgets.get(i).add(nwid);
+					}
+				}
+			}
+		}
+
+		private void handleImageGroup(JSONObject r2image) throws InterruptedException {
+			checkInterrupted();
+			String rname = (String) r2image.get("name");
+			ImageData i = new ImageData(apk, rname);
+			JSONArray rimages = (JSONArray) r2image.get("images");
+			HashSet<ImageData> rimageset = new HashSet<>();
+			rimageset.add(i);
+			imagegroupmap.put(i, rimageset);
+			for (Object y : rimages) {
+				String imagename = (String) y;
+				ImageData e = new ImageData(apk, imagename);
+				rimageset.add(e);
+				imagegroupmap.put(e, rimageset);
+			}
+
+			if (img2widgets.containsKey(i)) {
+				HashSet<WidgetID> widset = img2widgets.get(i);
+				for (Object y : rimages) {
+					String imagename = (String) y;
+					img2widgets.put(new ImageData(apk, imagename), widset);
+				}
+			}
+		}
+
+		private void checkInterrupted() throws InterruptedException {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedException(apk + " timed out");
+			}
+		}
+
 	}
 
 	public void generateImageToMethods(List<String> apks, String widimages, String gator, String outputfolder)
 			throws Exception {
+		generateImageToMethods(apks, widimages, gator, outputfolder, 1, DEFAULT_TIMEOUT_MINUTES);
+	}
 
-		// apks.addAll(Files.readAllLines(Paths.get("selectedAPK.txt")));
-		final ExecutorService service = Executors.newSingleThreadExecutor();
-
+	/*
+	 * Keeps up to "threads" APKTasks in flight on an ApkBatch. A task still running after "timeout" minutes is
+	 * interrupted and gives up at its next JSON record. Every APK that reaches a status (ok, nogator, timeout,
+	 * failed) is appended to the manifest in the output folder, so a restarted run only processes the APKs that
+	 * never finished or whose last attempt timed out or failed.
+	 */
+	public void generateImageToMethods(List<String> apks, String widimages, String gator, String outputfolder,
+			int threads, long timeout) throws Exception {
 
+		String manifest = outputfolder + "/" + MANIFEST_NAME;
+		Set<String> finished = ApkBatch.finished(manifest, "ok", "nogator");
+		List<String> pending = new ArrayList<>();
 		for (String apk : apks) {
-			PrintWriter out = new PrintWriter(outputfolder + "/" + apk + "_img2widgets.csv");
-			out.println("APK\tImage\tWID\tWID Name\tLayout\tHandler");
+			if (!finished.contains(apk)) {
+				pending.add(apk);
+			}
+		}
+		System.out.println("Skipping " + (apks.size() - pending.size()) + " finished APKs, " + pending.size()
+				+ " left to analyze with " + threads + " threads.");
 
-			try {
+		new ApkBatch(manifest, threads, timeout).run(pending, apk -> {
+			APKTask apkTask = new APKTask(widimages, apk, gator, outputfolder);
+			String status = apkTask.call() == 0 ? "ok" : "nogator";
+			if (corpus != null) {
+				corpus.append(apk, apkTask.img2widgets, apkTask.w2handlers);
+			} else {
+				writeImg2Widgets(apkTask, outputfolder);
+			}
+			return status;
+		});
+	}
 
-				APKTask apkTask = new APKTask(widimages, apk, gator, outputfolder);
-				service.invokeAll(Arrays.asList(apkTask), 10, TimeUnit.MINUTES);
-				for (Entry<ImageData, HashSet<WidgetID>> e : apkTask.img2widgets.entrySet()) {
-					for (WidgetID wid : e.getValue()) {
-						out.print(apk + "\t");
-						out.print(e.getKey().name + "\t");
-						out.print(wid.id + "\t");
-						out.print(wid.idName + "\t");
-						out.print(wid.layout + "\t");
-						out.print("[");
-						if (apkTask.w2handlers.get(wid) != null){
-							for (String handler : apkTask.w2handlers.get(wid)) {
-								out.print(handler + "|");
-							}
+	private void writeImg2Widgets(APKTask apkTask, String outputfolder) throws IOException {
+		String apk = apkTask.apk;
+		PrintWriter out = new PrintWriter(outputfolder + "/" + apk + "_img2widgets.csv");
+		out.println("APK\tImage\tWID\tWID Name\tLayout\tHandler");
+		try {
+			for (Entry<ImageData, HashSet<WidgetID>> e : apkTask.img2widgets.entrySet()) {
+				for (WidgetID wid : e.getValue()) {
+					out.print(apk + "\t");
+					out.print(e.getKey().name + "\t");
+					out.print(wid.id + "\t");
+					out.print(wid.idName + "\t");
+					out.print(wid.layout + "\t");
+					out.print("[");
+					if (apkTask.w2handlers != null && apkTask.w2handlers.get(wid) != null){
+						for (String handler : apkTask.w2handlers.get(wid)) {
+							out.print(handler + "|");
 						}
-						out.println("]");
 					}
+					out.println("]");
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
-				System.err.println(apk + " cannot be analyzed");
 			}
+		} finally {
 			out.close();
 		}
-		service.shutdown();
 	}
 
 }
@@ -0,0 +1,130 @@
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/*
+ * Appends the img2widgets mapping of each APK to one binary corpus file instead of a TSV per APK.
+ * APKCallGraph reads it back with Img2WidgetsCorpus.
+ *
+ * <corpus> is a sequence of blocks, one per APK, all numbers big-endian:
+ *   int    magic 0x49325742 ("I2WB")
+ *   int    string count S, then S x (int length, UTF-8 bytes)   dictionary of the APK, image, widget name,
+ *                                                               layout and handler strings of this block
+ *   int    apk (dictionary index)
+ *   int    row count R
+ *   int[R] image, long[R] wid, int[R] widName, int[R] layout   one column per TSV field
+ *   int[R + 1] handler offsets, int H, int[H] handlers         handlers of row r are [offsets[r], offsets[r + 1])
+ * <corpus>.idx has one "apk\toffset\tlength" line per block; when an APK was appended twice the last line wins.
+ */
+public class Img2WidgetsCorpusWriter {
+
+	public static final int MAGIC = 0x49325742;
+
+	private final String path;
+	private long offset;
+
+	public Img2WidgetsCorpusWriter(String path) throws IOException {
+		this.path = path;
+		this.offset = new File(path).length();
+	}
+
+	public synchronized void append(String apk, Map<ImageData, HashSet<WidgetID>> img2widgets,
+			Map<WidgetID, Set<String>> w2handlers) throws IOException {
+		byte[] block = encode(apk, img2widgets, w2handlers);
+		try (FileOutputStream data = new FileOutputStream(path, true)) {
+			data.write(block);
+		}
+		// the index line is written last, so a block cut short by a crash is never referenced
+		try (PrintWriter index = new PrintWriter(new FileWriter(path + ".idx", true))) {
+			index.println(apk + "\t" + offset + "\t" + block.length);
+		}
+		offset += block.length;
+	}
+
+	private byte[] encode(String apk, Map<ImageData, HashSet<WidgetID>> img2widgets,
+			Map<WidgetID, Set<String>> w2handlers) throws IOException {
+		HashMap<String, Integer> dictionary = new HashMap<>();
+		List<String> strings = new ArrayList<>();
+		List<Integer> images = new ArrayList<>();
+		List<Long> wids = new ArrayList<>();
+		List<Integer> widNames = new ArrayList<>();
+		List<Integer> layouts = new ArrayList<>();
+		List<Integer> offsets = new ArrayList<>();
+		List<Integer> handlers = new ArrayList<>();
+
+		int apkIndex = intern(apk, dictionary, strings);
+		// same row order as the _img2widgets.csv output
+		for (Entry<ImageData, HashSet<WidgetID>> e : img2widgets.entrySet()) {
+			for (WidgetID wid : e.getValue()) {
+				images.add(intern(e.getKey().name, dictionary, strings));
+				wids.add(wid.id);
+				widNames.add(intern(wid.idName, dictionary, strings));
+				layouts.add(intern(wid.layout, dictionary, strings));
+				offsets.add(handlers.size());
+				if (w2handlers != null && w2handlers.get(wid) != null) {
+					for (String handler : w2handlers.get(wid)) {
+						handlers.add(intern(handler, dictionary, strings));
+					}
+				}
+			}
+		}
+		offsets.add(handlers.size());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			byte[] utf8 = String.valueOf(s).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+		out.writeInt(apkIndex);
+		out.writeInt(images.size());
+		for (int i : images) {
+			out.writeInt(i);
+		}
+		for (long wid : wids) {
+			out.writeLong(wid);
+		}
+		for (int i : widNames) {
+			out.writeInt(i);
+		}
+		for (int i : layouts) {
+			out.writeInt(i);
+		}
+		for (int i : offsets) {
+			out.writeInt(i);
+		}
+		out.writeInt(handlers.size());
+		for (int i : handlers) {
+			out.writeInt(i);
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static int intern(String s, HashMap<String, Integer> dictionary, List<String> strings) {
+		Integer index = dictionary.get(s);
+		if (index == null) {
+			index = strings.size();
+			dictionary.put(s, index);
+			strings.add(s);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,60 @@
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/*
+ * Compares the json-simple tree parser with the streaming JSONRecordReader when APKTask reads
+ * <apk>.json, <apk>.apk.json and <apk>.image.json.
+ * Usage: JSONIngestionBenchmark <widimages> <gator> <apk list> [rounds]
+ * Peak heap is the sum of the heap pools' peak usage during one pass; the first round includes JIT warm-up.
+ */
+public class JSONIngestionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String widimages = args[0];
+		String gator = args[1];
+		List<String> apks = Files.readAllLines(Paths.get(args[2]));
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+		ImageToWidgetsAnalyzer analyzer = new ImageToWidgetsAnalyzer();
+		for (int round = 0; round < rounds; round++) {
+			for (boolean streaming : new boolean[] { false, true }) {
+				System.gc();
+				resetPeaks();
+				long start = System.nanoTime();
+				int widgets = 0;
+				for (String apk : apks) {
+					ImageToWidgetsAnalyzer.APKTask task = analyzer.new APKTask(widimages, apk, gator, null, streaming);
+					task.call();
+					widgets += task.img2widgets.size();
+				}
+				long millis = (System.nanoTime() - start) / 1000000;
+				System.err.println(String.format("round %d %-9s %d APKs, %d images, %d ms, peak heap %d MB", round,
+						streaming ? "streaming" : "tree", apks.size(), widgets, millis, peakHeap() >> 20));
+			}
+		}
+	}
+
+	private static void resetPeaks() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
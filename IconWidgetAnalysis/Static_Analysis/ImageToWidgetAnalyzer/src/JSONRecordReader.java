@@ -0,0 +1,183 @@
+
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/*
+ * Event-based reader for the JSON arrays written by WidImageResolver and GATOR.
+ * Objects found at "recordDepth" (the top-level array is depth 1, its objects depth 2, ...) are handed to the
+ * callback one by one and then dropped, so only the record being read is ever kept in memory.
+ * Each record comes with the object enclosing its array (e.g. the layout of a tag, the window of a view).
+ * The enclosing object only holds the primitive entries seen so far; records are held back until it has
+ * "enclosingKey", so they are never reported without e.g. the window name.
+ */
+public class JSONRecordReader implements ContentHandler {
+
+	public interface RecordCallback {
+		void record(JSONObject record, JSONObject enclosing) throws Exception;
+	}
+
+	private final int recordDepth;
+	private final String enclosingKey;
+	private final RecordCallback callback;
+
+	private LinkedList<Object> stack = new LinkedList<>();
+	private LinkedList<String> keys = new LinkedList<>();
+	private List<JSONObject> pending = new ArrayList<>();
+	private JSONObject enclosing;
+	private Exception callbackException;
+
+	public JSONRecordReader(int recordDepth, String enclosingKey, RecordCallback callback) {
+		this.recordDepth = recordDepth;
+		this.enclosingKey = enclosingKey;
+		this.callback = callback;
+	}
+
+	public static void read(Reader in, int recordDepth, String enclosingKey, RecordCallback callback)
+			throws Exception {
+		JSONRecordReader reader = new JSONRecordReader(recordDepth, enclosingKey, callback);
+		try {
+			new JSONParser().parse(in, reader);
+		} finally {
+			in.close();
+		}
+		if (reader.callbackException != null) {
+			throw reader.callbackException;
+		}
+	}
+
+	@Override
+	public void startJSON() throws ParseException, IOException {
+		stack.clear();
+		keys.clear();
+		pending.clear();
+		enclosing = null;
+	}
+
+	@Override
+	public void endJSON() throws ParseException, IOException {
+	}
+
+	@Override
+	public boolean startObject() throws ParseException, IOException {
+		// an object started now has depth stack.size() + 1
+		JSONObject object = new JSONObject();
+		if (stack.size() == recordDepth - 3) {
+			enclosing = object;
+		} else if (stack.size() < recordDepth - 1) {
+			// above the records: only the enclosing object is kept, and only its primitive entries
+			object = null;
+		}
+		stack.push(object == null ? Boolean.FALSE : object);
+		return true;
+	}
+
+	@Override
+	public boolean endObject() throws ParseException, IOException {
+		Object top = stack.pop();
+		if (stack.size() == recordDepth - 1 && top instanceof JSONObject) {
+			JSONObject record = (JSONObject) top;
+			if (enclosingKey == null || (enclosing != null && enclosing.containsKey(enclosingKey))) {
+				return report(record);
+			}
+			pending.add(record);
+			return true;
+		}
+		if (top == enclosing && enclosing != null) {
+			boolean more = flush();
+			enclosing = null;
+			return more;
+		}
+		attach(top);
+		return true;
+	}
+
+	@Override
+	public boolean startObjectEntry(String key) throws ParseException, IOException {
+		keys.push(key);
+		return true;
+	}
+
+	@Override
+	public boolean endObjectEntry() throws ParseException, IOException {
+		keys.pop();
+		return true;
+	}
+
+	@Override
+	public boolean startArray() throws ParseException, IOException {
+		stack.push(stack.size() >= recordDepth ? new JSONArray() : Boolean.FALSE);
+		return true;
+	}
+
+	@Override
+	public boolean endArray() throws ParseException, IOException {
+		attach(stack.pop());
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean primitive(Object value) throws ParseException, IOException {
+		if (stack.isEmpty()) {
+			return true;
+		}
+		Object top = stack.peek();
+		if (top instanceof JSONObject) {
+			((JSONObject) top).put(keys.peek(), value);
+			if (top == enclosing && enclosingKey != null && enclosingKey.equals(keys.peek())) {
+				return flush();
+			}
+		} else if (top instanceof JSONArray) {
+			((JSONArray) top).add(value);
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void attach(Object value) {
+		if (stack.isEmpty() || !(value instanceof JSONObject || value instanceof JSONArray)) {
+			return;
+		}
+		Object top = stack.peek();
+		if (top == enclosing) {
+			// nested containers of the enclosing object are not kept
+			return;
+		}
+		if (top instanceof JSONObject) {
+			((JSONObject) top).put(keys.peek(), value);
+		} else if (top instanceof JSONArray) {
+			((JSONArray) top).add(value);
+		}
+	}
+
+	private boolean flush() {
+		for (JSONObject record : pending) {
+			if (!report(record)) {
+				return false;
+			}
+		}
+		pending.clear();
+		return true;
+	}
+
+	private boolean report(JSONObject record) {
+		try {
+			callback.record(record, enclosing);
+			return true;
+		} catch (Exception e) {
+			// stop the parser, the exception is rethrown by read()
+			callbackException = e;
+			return false;
+		}
+	}
+}
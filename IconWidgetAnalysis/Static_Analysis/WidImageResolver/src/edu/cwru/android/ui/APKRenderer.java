@@ -25,6 +25,7 @@ import com.android.ide.common.resources.ResourceResolver;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.ide.common.resources.configuration.VersionQualifier;
 import com.android.io.FolderWrapper;
+import com.android.io.IAbstractFolder;
 import com.android.resources.Density;
 import com.android.resources.Keyboard;
 import com.android.resources.KeyboardState;
@@ -37,38 +38,50 @@ import com.android.resources.TouchScreen;
 import com.android.utils.Pair;
 
 import android.content.pm.PackageParser.Component;
-import android.view.View;
 //import edu.cwru.android.ui.correlation.UICorrelation;
 import edu.cwru.android.ui.correlation.UIKeywordFactory;
 
 import org.apache.logging.log4j.LogManager;
-import org.jgrapht.DirectedGraph;
 import org.jgrapht.ext.ComponentNameProvider;
 import org.jgrapht.ext.DOTExporter;
 import org.jgrapht.ext.VertexNameProvider;
-import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.util.HashMap;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 
@@ -96,118 +109,144 @@ public class APKRenderer {
 	private HashSet<String> renderedLayouts;
 	private HashSet<Integer> annotationViews;
 	private HashSet<Integer> editBoxes;
+	// number of worker JVMs a theme pass is sharded over, 1 renders in this JVM
+	private int renderWorkers = Integer.getInteger("renderer.workers", 1);
+	private long workerTimeoutMinutes = Long.getLong("renderer.worker.timeout", 10);
+	// worker JVMs of the APK being rendered, started by the first pass that
+	// needs them and reused by the next ones; null for a worker that died
+	private List<RenderWorker> renderWorkerProcs = new ArrayList<RenderWorker>();
+	// milliseconds the worker JVMs spent decoding the APK being rendered
+	private long workerDecodeMillis;
+	// write dot_output/<layout>.dot for each rendered layout
+	private boolean exportDot = !"false".equals(System.getProperty("renderer.dot"));
+	// build res/ in memory from the APK instead of decoding it with apktool
+	private boolean inMemoryRes = Boolean.getBoolean("renderer.inMemoryRes");
+
+	// below this many layouts per worker, starting another JVM costs more than it saves
+	private static final int MIN_LAYOUTS_PER_WORKER = 4;
 
 	public APKRenderer(String sdk) {
 		this.SDK = sdk;
 	}
 
+	/**
+	 * @param workers
+	 *            number of worker processes, each with its own layoutlib, the
+	 *            layouts of a theme pass are split over. 1 (the default, or
+	 *            -Drenderer.workers) renders them all in this process.
+	 */
+	public void setRenderWorkers(int workers) {
+		this.renderWorkers = Math.max(1, workers);
+	}
+
+	/**
+	 * @param inMemoryRes
+	 *            true (or -Drenderer.inMemoryRes=true) to load the project
+	 *            resources with {@link InMemoryResFolder} instead of an apktool
+	 *            decode in apk_output/. Bitmaps are then not drawn.
+	 */
+	public void setInMemoryRes(boolean inMemoryRes) {
+		this.inMemoryRes = inMemoryRes;
+	}
+
+	/**
+	 * Runs lib/apktool. At most -Dapktool.concurrency decodes (default: number
+	 * of cores) run at once, each waits without polling and is killed after
+	 * -Dapktool.timeout minutes (default 10). The output of apktool is drained
+	 * as it is produced so a chatty decode cannot block on a full pipe; its
+	 * last lines are kept and logged if the decode fails.
+	 */
 	private static class ApkTool {
-		static void decodeApk(String apk, String dstDir) {
-			Process proc;
+		private static final int LOG_LINES = 50;
+		private static final long TIMEOUT_MINUTES = Long.getLong("apktool.timeout", 10);
+		private static final Semaphore slots = new Semaphore(
+				Integer.getInteger("apktool.concurrency", Runtime.getRuntime().availableProcessors()));
+
+		static void decodeApk(String apk, String dstDir) throws IOException {
+			try {
+				slots.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted while waiting to decode " + apk, e);
+			}
 			try {
-				proc = new ProcessBuilder().command("lib/apktool", "d", "-f", "-s", apk, "-o", dstDir).start();
-				boolean repeat = true;
-				int exit = -1;
-				while (repeat) {
-					try {
-						exit = proc.exitValue();
-						repeat = false;
-					} catch (Exception e) {
+				Process proc = new ProcessBuilder().command("lib/apktool", "d", "-f", "-s", apk, "-o", dstDir)
+						.redirectErrorStream(true).start();
+				ArrayDeque<String> tail = new ArrayDeque<String>();
+				Thread drain = new Thread(() -> drain(proc.getInputStream(), tail), "apktool " + apk);
+				drain.setDaemon(true);
+				drain.start();
+				boolean done;
+				try {
+					done = proc.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					done = false;
+				}
+				if (!done) {
+					proc.destroyForcibly();
+				}
+				try {
+					drain.join(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (!done || proc.exitValue() != 0) {
+					synchronized (tail) {
+						for (String line : tail) {
+							log.error("apktool: %s", line);
+						}
 					}
+					throw new IOException(done ? "apktool exited with " + proc.exitValue() + " for " + apk
+							: "apktool timed out after " + TIMEOUT_MINUTES + " minutes for " + apk);
 				}
-			} catch (IOException e1) {
-				log.error(e1);
+			} finally {
+				slots.release();
 			}
 		}
 
-		static void removeTemp(String dstDir) {
-			Process proc;
-			try {
-				proc = new ProcessBuilder().command("rm", "-r", "-f", dstDir).start();
-				boolean repeat = true;
-				int exit = -1;
-				while (repeat) {
-					try {
-						exit = proc.exitValue();
-						repeat = false;
-					} catch (Exception e) {
+		// reads the output to the end, keeping the last LOG_LINES lines
+		private static void drain(InputStream in, ArrayDeque<String> tail) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					log.debug("apktool: %s", line);
+					synchronized (tail) {
+						if (tail.size() == LOG_LINES) {
+							tail.removeFirst();
+						}
+						tail.addLast(line);
 					}
 				}
-			} catch (IOException e1) {
-				log.error(e1);
+			} catch (IOException e) {
+				// the process was killed
 			}
 		}
-	}
-
-	/**
-	 * Build a hierarchy Graph for current layout. If current layout has
-	 * multiple top level elements (e.g. &lt;merge&gt; is the root node of the
-	 * XML file), an artificial {@link UIElement} node is built as the root of
-	 * the graph.
-	 *
-	 * @param session
-	 * @return a {@link Graph} representation of current layout
-	 */
-	private DirectedGraph<UIElement, DefaultEdge> buildUiHierarchy(RenderSession session) {
-		List<ViewInfo> topLevels = session.getRootViews();
-		UIElement root = null;
-		UIElement.NODENBR = 0;
-		DirectedGraph<UIElement, DefaultEdge> uiHierarchy = new DefaultDirectedGraph<UIElement, DefaultEdge>(
-				DefaultEdge.class);
-		if (topLevels.size() > 1) {
-			root = new UIElement();
-			uiHierarchy.addVertex(root);
-		}
-		buildUiHierarchyEx(uiHierarchy, root, topLevels);
-		return uiHierarchy;
-	}
 
-	private void buildUiHierarchyEx(DirectedGraph<UIElement, DefaultEdge> uiHierarchy, UIElement parent,
-			List<ViewInfo> views) {
-		UIElement element;
-		for (ViewInfo info : views) {
-			element = new UIElement();
-			element.left = info.getLeft();
-			element.top = info.getTop();
-			element.right = info.getRight();
-			element.bottom = info.getBottom();
-			element.className = info.getClassName();
-			View view = (View) info.getViewObject();
-			element.view = view;
-			element.id = view.getId();
-			element.paddingLeft = view.getPaddingLeft();
-			element.paddingTop = view.getPaddingTop();
-			element.paddingRight = view.getPaddingRight();
-			element.paddingBottom = view.getPaddingBottom();
-			element.visibility = view.getVisibility();
-			element.height = view.getHeight();
-			element.width = view.getWidth();
-			if (view instanceof android.widget.TextView) {
-				CharSequence text = ((android.widget.TextView) view).getText();
-				CharSequence hint = ((android.widget.TextView) view).getHint();
-				String textEx = "", hintEx = "";
-				if (text != null)
-					textEx = text.toString().trim();
-				if (hint != null)
-					hintEx = hint.toString().trim();
-				if (!textEx.isEmpty() && !hintEx.isEmpty()) {
-					element.text = String.format("%s; %s", textEx, hintEx);
-				} else if (!textEx.isEmpty()) {
-					element.text = textEx;
-				} else if (!hintEx.isEmpty()) {
-					element.text = hintEx;
-				}
-			}
-			if (view instanceof android.widget.EditText) {
-				element.inputType = ((android.widget.EditText) view).getInputType();
-			}
-			uiHierarchy.addVertex(element);
-			if (parent != null) {
-				uiHierarchy.addEdge(parent, element);
+		static void removeTemp(String dstDir) {
+			Path root = Paths.get(dstDir);
+			if (!Files.exists(root)) {
+				return;
 			}
-			List<ViewInfo> children = info.getChildren();
-			if (children != null) {
-				buildUiHierarchyEx(uiHierarchy, element, children);
+			try {
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+						Files.delete(file);
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+						if (e != null) {
+							throw e;
+						}
+						Files.delete(dir);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			} catch (IOException e) {
+				log.error(e);
 			}
 		}
 	}
@@ -250,19 +289,22 @@ public class APKRenderer {
 				PrintWriter fout = new PrintWriter("sentext_output/uisensitive" + layout + ".txt");
 				Result result = session.getResult();
 				if (result.isSuccess()) {
-					DirectedGraph<UIElement, DefaultEdge> uiHierarchy = buildUiHierarchy(session);
-					HashMap<Integer, UIElement> id2nodemap = new HashMap<>();
-					DirectedGraph<UIElement, DefaultEdge> activeUiHierarchy = duplicateWithAbsCoordinate(uiHierarchy,
-							id2nodemap);
-
-					ComponentNameProvider<UIElement> provider = new UIElementNameProvider();
-					DOTExporter<UIElement, DefaultEdge> exporter = new DOTExporter<UIElement, DefaultEdge>(
-							new UIElementIdProvider(), provider, null);
-					exporter.exportGraph(uiHierarchy, new FileWriter("dot_output/" + layout + ".dot"));
-
-					for (UIElement ele : uiHierarchy.vertexSet()) {
-						fout.println("id: " + ele.id + " res id: " + resolver.resolveNameForId(ele.id));
-						System.out.println("id: " + ele.id + " res id: " + resolver.resolveNameForId(ele.id));
+					// one pass over the views, bounds already absolute
+					ViewTree uiHierarchy = ViewTree.build(session.getRootViews());
+
+					if (exportDot) {
+						ComponentNameProvider<UIElement> provider = new UIElementNameProvider();
+						DOTExporter<UIElement, DefaultEdge> exporter = new DOTExporter<UIElement, DefaultEdge>(
+								new UIElementIdProvider(), provider, null);
+						try (FileWriter dot = new FileWriter("dot_output/" + layout + ".dot")) {
+							exporter.exportGraph(uiHierarchy.toGraph(), dot);
+						}
+					}
+
+					for (int node = 0; node < uiHierarchy.size(); node++) {
+						int id = uiHierarchy.id(node);
+						fout.println("id: " + id + " res id: " + resolver.resolveNameForId(id));
+						System.out.println("id: " + id + " res id: " + resolver.resolveNameForId(id));
 					}
 					renderedLayouts.add(layout);
 
@@ -275,10 +317,11 @@ public class APKRenderer {
 					// addLayout2Hierarchy(layout, uiHierarchy);
 
 					for (Integer id : editBoxes) {
-						UIElement editbox = id2nodemap.get(id);
-						int editBoxId = editbox.id;
+						int editbox = id - 1;
+						int editBoxId = uiHierarchy.id(editbox);
+						String text = uiHierarchy.text(editbox);
 						String tag;
-						if ((tag = UIKeywordFactory.sensitive(editbox.text)) != null) {
+						if (text != null && (tag = UIKeywordFactory.sensitive(text)) != null) {
 							fout.println("sensitive editbox: " + editBoxId + " res id: "
 									+ resolver.resolveNameForId(editBoxId) + " tag: " + tag);
 						}
@@ -378,83 +421,41 @@ public class APKRenderer {
 		}
 	}
 
-	private void postBuildUiHierarchy(String layout, DirectedGraph<UIElement, DefaultEdge> uiHierarchy) {
-		// TODO Auto-generated method stub
+	private void postBuildUiHierarchy(String layout, ViewTree uiHierarchy) {
 		annotationViews = new HashSet<Integer>();
 		editBoxes = new HashSet<Integer>();
-		Set<UIElement> vertexSet = uiHierarchy.vertexSet();
-		for (UIElement ele : vertexSet) {
-			if (ele.className != null && ele.className.equals("android.widget.TextView")) {
+		for (int node = 0; node < uiHierarchy.size(); node++) {
+			Object view = uiHierarchy.view(node);
+			int left = uiHierarchy.left(node), top = uiHierarchy.top(node);
+			int right = uiHierarchy.right(node), bottom = uiHierarchy.bottom(node);
+			if ("android.widget.TextView".equals(uiHierarchy.className(node))) {
 				// make sure the TextView is not zero size.
-				if (ele.right > ele.left && ele.bottom > ele.top)
-					annotationViews.add(ele.nodeid);
-			} else if (ele.view instanceof android.widget.EditText || ele.view instanceof android.widget.RadioButton
-					|| ele.view instanceof android.widget.CheckBox) {
-				if (ele.right - ele.paddingRight > ele.left + ele.paddingLeft
-						&& ele.bottom - ele.paddingBottom > ele.top + ele.paddingTop) {
-					editBoxes.add(ele.nodeid);
+				if (right > left && bottom > top)
+					annotationViews.add(node + 1);
+			} else if (view instanceof android.widget.EditText || view instanceof android.widget.RadioButton
+					|| view instanceof android.widget.CheckBox) {
+				if (right - uiHierarchy.paddingRight(node) > left + uiHierarchy.paddingLeft(node)
+						&& bottom - uiHierarchy.paddingBottom(node) > top + uiHierarchy.paddingTop(node)) {
+					editBoxes.add(node + 1);
 				}
 			}
 		}
 	}
 
-	private DirectedGraph<UIElement, DefaultEdge> duplicateWithAbsCoordinate(DirectedGraph<UIElement, DefaultEdge> src,
-			HashMap<Integer, UIElement> id2nodemap) {
-		DirectedGraph<UIElement, DefaultEdge> dst = new DefaultDirectedGraph<UIElement, DefaultEdge>(DefaultEdge.class);
-
-		UIElement.NODENBR = 0;
-		UIElement root = null;
-		for (UIElement ele : src.vertexSet()) {
-			UIElement newele = ele.clone();
-			dst.addVertex(newele);
-			id2nodemap.put(ele.nodeid, newele);
-			if (ele.nodeid == 1) {
-				root = ele;
-			}
-		}
-
-		Queue<UIElement> queue = new LinkedList<UIElement>();
-		queue.offer(root); // root
-		while (!queue.isEmpty()) {
-			UIElement ele = queue.poll();
-			UIElement newele = id2nodemap.get(ele.nodeid);
-			Set<DefaultEdge> outedges = src.outgoingEdgesOf(ele);
-			for (DefaultEdge outedge : outedges) {
-
-				UIElement succ = src.getEdgeTarget(outedge);
-				UIElement newSucc = id2nodemap.get(succ.nodeid);
-				// reset the coordinates to be absolute coordinates. the
-				// hierarchy order must be ensured here.
-				newSucc.left += newele.left;
-				newSucc.right += newele.left;
-				newSucc.top += newele.top;
-				newSucc.bottom += newele.top;
-				dst.addEdge(newele, newSucc);
-				queue.offer(succ);
-			}
-		}
-		return dst;
+	public Set<String> classNamesInLayoutlib(String layoutlib) throws Exception {
+		return RenderServicePool.classNamesInJar(layoutlib);
 	}
 
-	public Set<String> classNamesInLayoutlib(String layoutlib) throws Exception {
-		JarInputStream crunchifyJarFile = new JarInputStream(new FileInputStream(layoutlib));
-		JarEntry crunchifyJar;
-		HashSet<String> classnames = new HashSet<>();
-		while (true) {
-			crunchifyJar = crunchifyJarFile.getNextJarEntry();
-			if (crunchifyJar == null) {
-				break;
-			}
-			if ((crunchifyJar.getName().endsWith(".class"))) {
-				String className = crunchifyJar.getName().replaceAll("/", "\\.");
-				String myClass = className.substring(0, className.lastIndexOf('.'));
-				classnames.add(myClass);
-			}
+	public void renderUI(String apkfile, boolean decomplied) throws Exception {
+		workerDecodeMillis = 0;
+		try {
+			renderPasses(apkfile, decomplied);
+		} finally {
+			closeRenderWorkers();
 		}
-		return classnames;
 	}
 
-	public void renderUI(String apkfile, boolean decomplied) throws Exception {
+	private void renderPasses(String apkfile, boolean decomplied) throws Exception {
 		// String apkfile = "DroidDream.apk";
 		resolver = new APKResourceResolver(apkfile);
 		resolver.extractARSCAndLayoutFiles();
@@ -477,11 +478,14 @@ public class APKRenderer {
 		String apktoolDir = "apk_output";
 		File prjFile = new File(apkfile);
 		FolderWrapper resFolder = null;
+		InMemoryResFolder memResFolder = null;
 		String dstDir = null;
 		try {
 			if (prjFile.isFile() && prjFile.canRead()) {
 				dstDir = String.format("%s/%s", apktoolDir, prjFile.getName());
-				if (decomplied) {
+				if (inMemoryRes) {
+					memResFolder = InMemoryResFolder.fromApk(apkfile, resolver);
+				} else if (decomplied) {
 					log.info("Decompiling APK file to %s...", dstDir);
 					ApkTool.decodeApk(apkfile, dstDir);
 					log.info("Done decompiling APK file to %s...", dstDir);
@@ -506,24 +510,18 @@ public class APKRenderer {
 		}
 		/********************/
 
+		// layoutlib and the class names of the fixed jars are loaded once per
+		// platform and shared by all the APKs rendered in this process
 		File sdkDir = new File(SDK);
-		RenderServiceFactory factory = RenderServiceFactory.create(sdkDir);
+		RenderServiceFactory factory = RenderServicePool.factoryFor(sdkDir);
+		if (factory == null) {
+			throw new IllegalStateException("Failed to load platform rendering library " + SDK);
+		}
 
 		// load the project resources
-		ResourceRepository projectRes = new ResourceRepository(resFolder, false /* isFramework */) {
-
-			@Override
-			protected ResourceItem createResourceItem(String name) {
-				return new ResourceItem(name);
-			}
-		};
-
-		projectRes.loadResources();
+		ResourceRepository projectRes = loadProjectResources(memResFolder != null ? memResFolder : resFolder);
 
-		Set<String> classes = classNamesInLayoutlib(SDK + "/data/layoutlib.jar");
-		classes.addAll(classNamesInLayoutlib("lib/support-v4-22.0.0.jar"));
-		classes.addAll(classNamesInLayoutlib("lib/appcompat-v7-22.0.0.jar"));
-		classes.addAll(classNamesInLayoutlib("lib/support-annotations-22.0.0.jar"));
+		Set<String> classes = RenderServicePool.classNamesFor(sdkDir);
 
 		// PrintWriter viewclasses = new PrintWriter("allclasses.txt");
 		// for (String c : classes) {
@@ -545,21 +543,7 @@ public class APKRenderer {
 			// apiLevel = 22;
 			if (config == null) {
 				// create the rendering config
-				config = RenderServiceFactory.createConfig(480, 800, // size 1
-																		// and
-																		// 2.
-																		// order
-																		// doesn't
-																		// matter.
-																		// Orientation
-																		// will
-																		// drive
-																		// which
-																		// is w
-																		// and h
-						ScreenSize.LARGE, ScreenRatio.LONG, ScreenOrientation.PORTRAIT, Density.MEDIUM,
-						TouchScreen.FINGER, KeyboardState.SOFT, Keyboard.QWERTY, NavigationState.EXPOSED,
-						Navigation.NONAV, apiLevel); // api level
+				config = renderConfig(apiLevel);
 				// set the LanguageQualifier (use default) in case layoutlib
 				// retrieve language resourses other than
 				// English
@@ -571,15 +555,20 @@ public class APKRenderer {
 			while ((theme = resolver.getNextAvailableTheme()) != null) {
 				String themeName = theme.getFirst();
 				boolean isProjectTheme = theme.getSecond().booleanValue();
-				// create the resource resolver once for the given config.
-				resources = factory.createResourceResolver(config, projectRes, themeName, isProjectTheme);
-				// create the render service
-				renderService = factory.createService(resources, config, new ProjectCallback(),
-						new MyLayoutlibCallBack(resolver, classes, factory.getResTable()));
 
 				log.info("+[Pass: %d] Use API level: %d; Use Theme: %s(%s)", pass++, apiLevel, themeName,
 						isProjectTheme);
-				renderUiInBatchMode(renderService.setLog(stdLogger), config, resolver, themeName);
+				int workers = Math.min(renderWorkers, layoutNames.size() / MIN_LAYOUTS_PER_WORKER);
+				if (workers > 1) {
+					renderUiInWorkers(workers, apkfile, dstDir, apiLevel, themeName, isProjectTheme);
+				} else {
+					// create the resource resolver once for the given config.
+					resources = factory.createResourceResolver(config, projectRes, themeName, isProjectTheme);
+					// create the render service
+					renderService = factory.createService(resources, config, new ProjectCallback(),
+							new MyLayoutlibCallBack(resolver, classes, factory.getResTable()).setResFolder(memResFolder));
+					renderUiInBatchMode(renderService.setLog(stdLogger), config, resolver, themeName);
+				}
 
 				layoutNames.clear();
 				if (!failedLayout.isEmpty()) {
@@ -605,11 +594,6 @@ public class APKRenderer {
 
 		// File f = new File(SDK + "/platforms/android-17");
 
-		if (factory == null) {
-			System.err.println("Failed to load platform rendering library");
-			System.exit(1);
-		}
-
 		try {
 			resFolder = new FolderWrapper(dstDir + "/res");
 		} catch (Exception e) {
@@ -621,10 +605,421 @@ public class APKRenderer {
 
 	}
 
+	private static FolderConfiguration renderConfig(int apiLevel) {
+		// size 1 and 2, order doesn't matter. Orientation will drive which is
+		// w and h
+		return RenderServiceFactory.createConfig(480, 800, ScreenSize.LARGE, ScreenRatio.LONG,
+				ScreenOrientation.PORTRAIT, Density.MEDIUM, TouchScreen.FINGER, KeyboardState.SOFT, Keyboard.QWERTY,
+				NavigationState.EXPOSED, Navigation.NONAV, apiLevel);
+	}
+
+	private static ResourceRepository loadProjectResources(IAbstractFolder resFolder) {
+		ResourceRepository projectRes = new ResourceRepository(resFolder, false /* isFramework */) {
+
+			@Override
+			protected ResourceItem createResourceItem(String name) {
+				return new ResourceItem(name);
+			}
+		};
+		projectRes.loadResources();
+		return projectRes;
+	}
+
+	/**
+	 * A worker JVM of {@link #renderUiInWorkers} ({@link #runWorker}). The
+	 * theme passes are sent as lines to its stdin; its replies are the lines
+	 * of its stdout starting with REPLY, the other lines are its log and are
+	 * copied to this JVM's stdout.
+	 */
+	private static class RenderWorker {
+		static final String REPLY = "@render-worker ";
+		private final Process proc;
+		private final Writer commands;
+		private final BlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+
+		RenderWorker(List<String> command) throws IOException {
+			proc = new ProcessBuilder(command).redirectError(Redirect.INHERIT).start();
+			commands = new OutputStreamWriter(proc.getOutputStream(), StandardCharsets.UTF_8);
+			Thread pump = new Thread(this::pump, "render worker");
+			pump.setDaemon(true);
+			pump.start();
+		}
+
+		private void pump() {
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith(REPLY)) {
+						replies.add(line.substring(REPLY.length()));
+					} else {
+						System.out.println(line);
+					}
+				}
+			} catch (IOException e) {
+				// the worker was killed
+			}
+			replies.add("exit");
+		}
+
+		void send(String command) throws IOException {
+			commands.write(command + "\n");
+			commands.flush();
+		}
+
+		/**
+		 * @return the next reply, null if the worker exited or did not reply
+		 *         before deadline
+		 */
+		String await(long deadline) throws InterruptedException {
+			String reply = replies.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			return reply == null || reply.equals("exit") ? null : reply;
+		}
+
+		// end of stdin lets the worker exit
+		void close() throws InterruptedException {
+			try {
+				commands.close();
+			} catch (IOException e) {
+				// already gone
+			}
+			if (!proc.waitFor(10, TimeUnit.SECONDS)) {
+				proc.destroyForcibly();
+			}
+		}
+
+		void kill() {
+			proc.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Same as {@link #renderUiInBatchMode} for one theme pass, but the layouts
+	 * are split round-robin over worker JVMs ({@link #renderShard}). layoutlib
+	 * keeps static state and is not thread-safe, so each worker loads its own.
+	 * The workers decode the APK once and are kept for the next passes of the
+	 * APK, until {@link #closeRenderWorkers}. The rendered and failed layouts
+	 * of the workers are merged into renderedLayouts and failedLayout; the
+	 * layouts of a worker that crashed or timed out count as failed, so the
+	 * next theme gets them as usual.
+	 */
+	private void renderUiInWorkers(int workers, String apkfile, String dstDir, int apiLevel, String themeName,
+			boolean isProjectTheme) throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		log.info("Will render: %d files with %d workers", layoutNames.size(), workers);
+		failedLayout = new HashSet<String>();
+		List<List<String>> shards = new ArrayList<List<String>>();
+		for (int i = 0; i < workers; i++) {
+			shards.add(new ArrayList<String>());
+		}
+		int next = 0;
+		for (String layoutName : layoutNames) {
+			shards.get(next++ % workers).add(layoutName);
+		}
+
+		long deadline = start + TimeUnit.MINUTES.toMillis(workerTimeoutMinutes);
+		RenderWorker[] procs = startRenderWorkers(workers, apkfile, dstDir, deadline);
+		File[] layouts = new File[workers];
+		File[] results = new File[workers];
+		for (int i = 0; i < workers; i++) {
+			layouts[i] = File.createTempFile("layouts", ".txt");
+			layouts[i].deleteOnExit();
+			Files.write(layouts[i].toPath(), shards.get(i), StandardCharsets.UTF_8);
+			results[i] = File.createTempFile("rendered", ".txt");
+			results[i].deleteOnExit();
+			if (procs[i] != null) {
+				try {
+					procs[i].send(apiLevel + "\t" + themeName + "\t" + isProjectTheme + "\t" + layouts[i].getPath()
+							+ "\t" + results[i].getPath());
+				} catch (IOException e) {
+					log.error("render worker %d is gone for %s", i, apkfile);
+					dropRenderWorker(i);
+					procs[i] = null;
+				}
+			}
+		}
+
+		for (int i = 0; i < workers; i++) {
+			String reply = procs[i] == null ? null : procs[i].await(deadline);
+			if (procs[i] != null && reply == null) {
+				log.error("render worker %d timed out or exited for %s", i, apkfile);
+				dropRenderWorker(i);
+			}
+			if ("done".equals(reply)) {
+				for (String line : Files.readAllLines(results[i].toPath(), StandardCharsets.UTF_8)) {
+					int tab = line.indexOf('\t');
+					if (line.startsWith("rendered\t")) {
+						renderedLayouts.add(line.substring(tab + 1));
+					} else if (line.startsWith("failed\t")) {
+						failedLayout.add(line.substring(tab + 1));
+					}
+				}
+			} else {
+				log.error("render worker %d failed for %s, its %d layouts count as failed", i, apkfile,
+						shards.get(i).size());
+				failedLayout.addAll(shards.get(i));
+			}
+			layouts[i].delete();
+			results[i].delete();
+		}
+		log.info("Pass rendered by %d workers in %d ms", workers, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @return the first n worker JVMs for apkfile, the missing ones started and
+	 *         waited for until deadline; null for a worker that did not get
+	 *         ready
+	 */
+	private RenderWorker[] startRenderWorkers(int n, String apkfile, String dstDir, long deadline)
+			throws IOException, InterruptedException {
+		RenderWorker[] procs = new RenderWorker[n];
+		boolean[] started = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			if (i == renderWorkerProcs.size()) {
+				renderWorkerProcs.add(null);
+			}
+			procs[i] = renderWorkerProcs.get(i);
+			if (procs[i] == null) {
+				List<String> command = workerJvm();
+				command.addAll(Arrays.asList(APKRenderer.class.getName(), "-worker", SDK, apkfile, dstDir));
+				procs[i] = new RenderWorker(command);
+				renderWorkerProcs.set(i, procs[i]);
+				started[i] = true;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (!started[i]) {
+				continue;
+			}
+			// "ready <startup ms> <decode ms>"
+			String reply = procs[i].await(deadline);
+			String[] ready = reply == null ? new String[0] : reply.split(" ");
+			if (ready.length != 3 || !ready[0].equals("ready")) {
+				log.error("render worker %d did not start for %s", i, apkfile);
+				dropRenderWorker(i);
+				procs[i] = null;
+				continue;
+			}
+			long decode = Long.parseLong(ready[2]);
+			workerDecodeMillis += decode;
+			log.info("render worker %d ready in %s ms, %d ms of them decoding %s", i, ready[1], decode, apkfile);
+		}
+		return procs;
+	}
+
+	private void dropRenderWorker(int i) {
+		renderWorkerProcs.get(i).kill();
+		renderWorkerProcs.set(i, null);
+	}
+
+	private void closeRenderWorkers() throws InterruptedException {
+		for (RenderWorker worker : renderWorkerProcs) {
+			if (worker != null) {
+				worker.close();
+			}
+		}
+		renderWorkerProcs.clear();
+	}
+
+	/**
+	 * The java command for a render worker up to the main class: the JVM
+	 * options of this JVM (-Xmx etc., except a debugger agent, whose port
+	 * the workers would fight over) and its renderer, resolver and apktool
+	 * properties, so a worker renders as this JVM would.
+	 */
+	private List<String> workerJvm() {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!arg.startsWith("-agentlib:jdwp") && !arg.startsWith("-Xrunjdwp")) {
+				command.add(arg);
+			}
+		}
+		// also the ones set with System.setProperty(), which come last and win
+		for (String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("renderer.") || name.startsWith("resolver.") || name.startsWith("apktool.")) {
+				command.add("-D" + name + "=" + System.getProperty(name));
+			}
+		}
+		command.add("-Drenderer.inMemoryRes=" + inMemoryRes);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		return command;
+	}
+
+	/**
+	 * Worker side of {@link #renderUiInWorkers}: decodes the APK once, the APK
+	 * being already decoded to dstDir by apktool (unless inMemoryRes), replies
+	 * "ready &lt;startup ms&gt; &lt;decode ms&gt;" and then renders a shard
+	 * ({@link #renderShard}) for every "apiLevel\ttheme\tisProjectTheme\t
+	 * layoutsFile\tresultFile" line of stdin, replying "done" or "failed".
+	 */
+	private void runWorker(String apkfile, String dstDir) throws Exception {
+		long start = System.currentTimeMillis();
+		resolver = new APKResourceResolver(apkfile);
+		resolver.extractARSCAndLayoutFiles();
+		long decode = System.currentTimeMillis() - start;
+
+		File sdkDir = new File(SDK);
+		RenderServiceFactory factory = RenderServicePool.factoryFor(sdkDir);
+		if (factory == null) {
+			throw new IllegalStateException("Failed to load platform rendering library " + SDK);
+		}
+		Set<String> classes = RenderServicePool.classNamesFor(sdkDir);
+		InMemoryResFolder memResFolder = inMemoryRes ? InMemoryResFolder.fromApk(apkfile, resolver) : null;
+		ResourceRepository projectRes = loadProjectResources(
+				memResFolder != null ? memResFolder : new FolderWrapper(dstDir + "/res"));
+		System.out.println(RenderWorker.REPLY + "ready " + (System.currentTimeMillis() - start) + " " + decode);
+
+		BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = commands.readLine()) != null) {
+			String[] pass = line.split("\t");
+			String reply = "done";
+			try {
+				renderShard(factory, classes, projectRes, memResFolder, Integer.parseInt(pass[0]), pass[1],
+						Boolean.parseBoolean(pass[2]), new File(pass[3]), new File(pass[4]));
+			} catch (Exception e) {
+				log.error("render worker failed", e);
+				reply = "failed";
+			}
+			System.out.println(RenderWorker.REPLY + reply);
+		}
+	}
+
+	/**
+	 * Renders the layouts listed in layoutsFile with one API level and theme
+	 * and writes "rendered\t&lt;layout&gt;" and "failed\t&lt;layout&gt;" lines to
+	 * resultFile.
+	 */
+	private void renderShard(RenderServiceFactory factory, Set<String> classes, ResourceRepository projectRes,
+			InMemoryResFolder memResFolder, int apiLevel, String themeName, boolean isProjectTheme, File layoutsFile,
+			File resultFile) throws Exception {
+		renderedLayouts = new HashSet<>();
+		layoutNames = new TreeSet<String>(Files.readAllLines(layoutsFile.toPath(), StandardCharsets.UTF_8));
+
+		FolderConfiguration config = renderConfig(apiLevel);
+		ResourceResolver resources = factory.createResourceResolver(config, projectRes, themeName, isProjectTheme);
+		RenderService renderService = factory.createService(resources, config, new ProjectCallback(),
+				new MyLayoutlibCallBack(resolver, classes, factory.getResTable()).setResFolder(memResFolder));
+		renderUiInBatchMode(renderService.setLog(new StdOutLogger()), config, resolver, themeName);
+
+		try (PrintWriter out = new PrintWriter(resultFile, "UTF-8")) {
+			for (String layout : renderedLayouts) {
+				out.println("rendered\t" + layout);
+			}
+			for (String layout : failedLayout) {
+				out.println("failed\t" + layout);
+			}
+		}
+	}
+
+	public Set<String> getRenderedLayouts() {
+		return renderedLayouts;
+	}
+
+	public Set<String> getFailedLayouts() {
+		return failedLayout;
+	}
+
 	/**
-	 * @param args
+	 * @return milliseconds the worker JVMs spent decoding the last APK, summed
+	 *         over the workers
+	 */
+	public long getWorkerDecodeMillis() {
+		return workerDecodeMillis;
+	}
+
+	/**
+	 * Renders the APKs one after the other against the same platform, so
+	 * layoutlib is loaded once for all of them, and prints the time taken by
+	 * each APK.
+	 *
+	 * @param sdk
+	 *            the platform folder, e.g. .../platforms/android-22
+	 * @param decode
+	 *            passed to {@link #renderUI(String, boolean)}
+	 */
+	public static void renderAll(String sdk, List<File> apks, boolean decode) throws IOException {
+		long start = System.currentTimeMillis();
+		if (RenderServicePool.factoryFor(new File(sdk)) == null) {
+			System.err.println("Failed to load platform rendering library");
+			return;
+		}
+		RenderServicePool.classNamesFor(new File(sdk));
+		System.out.println(String.format("layoutlib ready in %d ms", System.currentTimeMillis() - start));
+
+		int n = 0, failed = 0;
+		long batchStart = System.currentTimeMillis();
+		for (File apk : apks) {
+			n++;
+			APKRenderer renderer = new APKRenderer(sdk);
+			long apkStart = System.currentTimeMillis();
+			String status;
+			try {
+				renderer.renderUI(apk.getPath(), decode);
+				status = String.format("ok, %d layouts rendered, %d failed", renderer.getRenderedLayouts().size(),
+						renderer.getFailedLayouts() == null ? 0 : renderer.getFailedLayouts().size());
+				if (renderer.getWorkerDecodeMillis() > 0) {
+					status += String.format(", %d ms decoding in workers", renderer.getWorkerDecodeMillis());
+				}
+			} catch (Exception e) {
+				log.error("rendering failed for " + apk, e);
+				status = "failed";
+				failed++;
+			}
+			long now = System.currentTimeMillis();
+			System.out.println(String.format("[%d/%d] %s %s in %d ms, %.1f APKs/min", n, apks.size(), apk.getName(),
+					status, now - apkStart, n * 60000.0 / Math.max(1, now - batchStart)));
+		}
+		System.out.println(String.format("%d APKs rendered (%d failed) in %d ms", apks.size(), failed,
+				System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * Without arguments, renders the sample project. Otherwise
+	 * APKRenderer &lt;platform folder&gt; &lt;apk folder or apk&gt;... [-decode]
+	 * renders every APK with {@link #renderAll(String, List, boolean)};
+	 * -decode decodes each APK with apktool first.
+	 * -Drenderer.workers=N splits the layouts of each APK over N worker JVMs.
+	 * -Drenderer.inMemoryRes=true reads the resources from the APKs without
+	 * apktool.
 	 */
 	public static void main(String[] args) {
+		if (args.length == 4 && args[0].equals("-worker")) {
+			// started by renderUiInWorkers
+			try {
+				new APKRenderer(args[1]).runWorker(args[2], args[3]);
+			} catch (Exception e) {
+				log.error("render worker failed", e);
+				System.exit(1);
+			}
+			System.exit(0);
+		}
+		if (args.length >= 2) {
+			List<File> apks = new ArrayList<File>();
+			boolean decode = false;
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("-decode")) {
+					decode = true;
+					continue;
+				}
+				File f = new File(args[i]);
+				File[] files = f.isDirectory() ? f.listFiles((dir, name) -> name.endsWith(".apk")) : new File[] { f };
+				if (files != null) {
+					Arrays.sort(files);
+					apks.addAll(Arrays.asList(files));
+				}
+			}
+			try {
+				renderAll(args[0], apks, decode);
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.exit(1);
+			}
+			return;
+		}
+
 		File f = new File(SDK + "/platforms/android-17");
 		RenderServiceFactory factory = RenderServiceFactory.create(f);
 
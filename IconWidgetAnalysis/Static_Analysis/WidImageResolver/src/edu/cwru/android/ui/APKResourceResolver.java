@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -22,6 +23,10 @@ import java.util.Set;
 import java.util.Stack;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.zip.ZipEntry;
@@ -82,15 +87,11 @@ public class APKResourceResolver {
 		}
 	}
 
-	private Map<String, Map<String, Integer>> supportName2id;
+	private SupportRTable supportName2id;
 
 	public APKResourceResolver(String apkfile) {
 		this.apkfilename = apkfile;
-		try {
-			this.supportName2id = new RResParser().parseNameToId("appres/R.txt");
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		this.supportName2id = SupportRTable.shared();
 	}
 
 
@@ -100,8 +101,8 @@ public class APKResourceResolver {
 	private String apkfilename = null;
 	private ZipFile apkAchive;
 	private ResTable resTable;
-	private HashMap<Integer, String> id2Name;
-	private HashMap<String, Integer> name2Id;
+	private StringConstantCache stringConstants;
+	private ResIdIndex id2Name;// ID <--> '<type>/<name>'
 	private Map<String, Set<String>> included2XMLs;// <include> tag to enclosing
 													// XMLs
 	private Map<Integer, List<ResLayout>> id2Node;// for layout xml
@@ -126,6 +127,11 @@ public class APKResourceResolver {
 													// Themes/isProjTheme in
 													// AndroidManifest.xml
 	private int nextAvailableThemeIdx = 0;
+	// number of threads decoding the layout and drawable XMLs of one APK;
+	// 1 decodes them one after the other. -Dresolver.threads=N
+	private int decodeThreads = Integer.getInteger("resolver.threads", 1);
+	// set once extractARSCAndLayoutFiles() got through all of the APK
+	private boolean extracted = false;
 	// default language is NULL string. use "##" to label it.
 	public final static String DefaultLanguage = "##";
 	
@@ -133,6 +139,27 @@ public class APKResourceResolver {
 		return appPackage;
 	}
 
+	/**
+	 * Decode independent layout and drawable XMLs on the given number of
+	 * threads. The output is the same as with 1 thread, provided the tag
+	 * handler supports {@link TagXmlHandler#forkForXml()} (see
+	 * {@link TagXmlHandler#supportsFork()}); otherwise the
+	 * layout XMLs are still decoded one after the other.
+	 *
+	 * @param threads
+	 */
+	public void setDecodeThreads(int threads) {
+		this.decodeThreads = threads;
+	}
+
+	// Called per ZIP entry and XML tag, so that an analysis cancelled for its
+	// time budget (see ApkBatch) stops instead of running on in the background.
+	private void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException(apkfilename + " interrupted");
+		}
+	}
+
 	private void extractManifest(ZipEntry manifestEntry) {
 		Map<Integer, Integer> themeId2UsedTimes = new HashMap<Integer, Integer>();
 		try {
@@ -144,6 +171,7 @@ public class APKResourceResolver {
 			int type = -1;
 			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
 				if (type == XmlPullParser.START_TAG) {
+					checkInterrupted();
 					String tagName = parser.getName();
 					if (tagName.equals("manifest")) {
 						appPackage = getAttributeTextValue(parser, "package");
@@ -164,6 +192,8 @@ public class APKResourceResolver {
 				}
 			}
 			parser.close();
+		} catch (CancellationException e) {
+			throw e;
 		} catch (Exception e) {
 			log.error("Error handling XML '%s'");
 		}
@@ -330,7 +360,7 @@ public class APKResourceResolver {
 	}
 
 	public void extractARSCAndLayoutFiles() {
-
+		extracted = false;
 		File apkF = new File(apkfilename);
 		if (!apkF.exists() || !apkF.canRead()) {
 			System.out.println("Error Reading File " + apkfilename);
@@ -345,9 +375,10 @@ public class APKResourceResolver {
 
 			Enumeration<?> enums = apkAchive.entries();
 			while (enums.hasMoreElements()) {
+				checkInterrupted();
 				ZipEntry entry = (ZipEntry) enums.nextElement();
 				String entryName = entry.getName();
-				log.info("+ENTRY: " + entryName);
+				log.debug("+ENTRY: " + entryName);
 				if ("AndroidManifest.xml".equals(entryName)) {
 					manifestEntry = entry;
 				} else if ("resources.arsc".equals(entryName)) {
@@ -363,6 +394,13 @@ public class APKResourceResolver {
 			extractManifest(manifestEntry);
 			extractLayoutXML(layoutEntries);
 			extractImageResourceXML(drawableEntries);
+			extracted = true;
+		} catch (CancellationException e) {
+			throw e;
+		} catch (InterruptedException e) {
+			// waiting for the decoding threads
+			Thread.currentThread().interrupt();
+			throw new CancellationException(apkfilename + " interrupted");
 		} catch (Exception e) {
 			log.error("Error Handling File %s: %s", apkfilename, e);
 		} finally {
@@ -392,68 +430,36 @@ public class APKResourceResolver {
 		
 		PrintWriter out = new PrintWriter("output/" + outputfile + ".image.json");
 		HashMap<String, Set<String>> map = new HashMap<>();
-		Set<Map.Entry<String, ZipEntry>> entrySet = drawableEntries.entrySet();
-		for (Map.Entry<String, ZipEntry> entry : entrySet) {
-			String name = entry.getKey();
-			ZipEntry xml = entry.getValue();
-			String[] split = name.split("/");
-			String filename = split[split.length - 1].substring(0, split[split.length - 1].length() - 4);
-
-			log.info("handling %s,%s", name, xml);
+		List<String> names = new ArrayList<>(drawableEntries.keySet());
+		List<List<String>> refs = new ArrayList<>();
+		if (decodeThreads > 1 && names.size() > 1) {
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(decodeThreads, names.size()));
 			try {
-				InputStream xmlIS = apkAchive.getInputStream(xml);
-				AXmlResourceParser parser = new AXmlResourceParser();
-				parser.open(xmlIS);
-				int type = -1;
-				while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
-					switch (type) {
-					case XmlPullParser.START_DOCUMENT:
-						break;
-					case XmlPullParser.START_TAG:
-						String tagName = parser.getName();
-						log.info("handling " + tagName + " in " + xml);
-						int tagId = getAttributeIdValue(parser, "id");
-						String imagenames = getAttributeTextValue(parser, "drawable");
-						String resourceRefName = "";
-						for (int i = 0; i < parser.getAttributeCount(); i++) {
-							String attrName = parser.getAttributeName(i);
-							if (attrName.equals("drawable")) {
-								int valueType = parser.getAttributeValueType(i);
-								String attributeValue = parser.getAttributeValue(i);
-
-								if (valueType == TypedValue.TYPE_REFERENCE) {
-									if (attributeValue.startsWith("@")) {
-										int resId = Integer.parseInt(attributeValue.substring(1));
-										resourceRefName = id2Name.get(resId);
-									}
-
-								} else if (valueType == TypedValue.TYPE_STRING) {
-									resourceRefName = attributeValue;
-								} else {
-									log.debug("Unexpected value type for <%s %s=[TYPE:0x%08x] .../>", parser.getName(),
-											attrName, valueType);
-								}
-								break;
-							}
-
-						}
-						if (!resourceRefName.equals("")) {
-							if (!map.containsKey(filename)) {
-								map.put(filename, new HashSet<>());
-							}
-							map.get(filename).add(resourceRefName.substring(9));
-						}
-						break;
-					case XmlPullParser.END_TAG:
-						break;
-					case XmlPullParser.END_DOCUMENT:
-						break;
-					}
+				List<Future<List<String>>> futures = new ArrayList<>();
+				for (String name : names) {
+					ZipEntry xml = drawableEntries.get(name);
+					futures.add(pool.submit(() -> parseDrawableXML(name, xml)));
 				}
-				parser.close();
-
-			} catch (Throwable e) {
-				log.error("Error handling XML '" + name + "'", e);
+				for (Future<List<String>> future : futures) {
+					refs.add(future.get());
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		} else {
+			for (String name : names) {
+				refs.add(parseDrawableXML(name, drawableEntries.get(name)));
+			}
+		}
+		// merged in entry order, so the maps iterate as in a sequential run
+		for (int i = 0; i < names.size(); i++) {
+			String[] split = names.get(i).split("/");
+			String filename = split[split.length - 1].substring(0, split[split.length - 1].length() - 4);
+			for (String imagename : refs.get(i)) {
+				if (!map.containsKey(filename)) {
+					map.put(filename, new HashSet<>());
+				}
+				map.get(filename).add(imagename);
 			}
 		}
 
@@ -474,12 +480,76 @@ public class APKResourceResolver {
 
 	}
 
+	// image names referenced by one res/drawable XML, in document order
+	private List<String> parseDrawableXML(String name, ZipEntry xml) {
+		List<String> refs = new ArrayList<>();
+		log.debug("handling %s,%s", name, xml);
+		try {
+			InputStream xmlIS = apkAchive.getInputStream(xml);
+			AXmlResourceParser parser = new AXmlResourceParser();
+			parser.open(xmlIS);
+			int type = -1;
+			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+				switch (type) {
+				case XmlPullParser.START_DOCUMENT:
+					break;
+				case XmlPullParser.START_TAG:
+					checkInterrupted();
+					String tagName = parser.getName();
+					log.debug("handling %s in %s", tagName, xml);
+					int tagId = getAttributeIdValue(parser, "id");
+					String imagenames = getAttributeTextValue(parser, "drawable");
+					String resourceRefName = "";
+					for (int i = 0; i < parser.getAttributeCount(); i++) {
+						String attrName = parser.getAttributeName(i);
+						if (attrName.equals("drawable")) {
+							int valueType = parser.getAttributeValueType(i);
+							String attributeValue = parser.getAttributeValue(i);
+
+							if (valueType == TypedValue.TYPE_REFERENCE) {
+								if (attributeValue.startsWith("@")) {
+									int resId = Integer.parseInt(attributeValue.substring(1));
+									resourceRefName = id2Name.nameFor(resId);
+								}
+
+							} else if (valueType == TypedValue.TYPE_STRING) {
+								resourceRefName = attributeValue;
+							} else {
+								log.debug("Unexpected value type for <%s %s=[TYPE:0x%08x] .../>", parser.getName(),
+										attrName, valueType);
+							}
+							break;
+						}
+
+					}
+					if (!resourceRefName.equals("")) {
+						refs.add(resourceRefName.substring(9));
+					}
+					break;
+				case XmlPullParser.END_TAG:
+					break;
+				case XmlPullParser.END_DOCUMENT:
+					break;
+				}
+			}
+			parser.close();
+
+		} catch (CancellationException e) {
+			throw e;
+		} catch (Throwable e) {
+			log.error("Error handling XML '" + name + "'", e);
+		}
+		return refs;
+	}
+
 	private void extractResourceARSC() {
 		try {
 			log.info("Try building ID<-->NAME mapping for '%s'...", apkfilename);
 			// InputStream arscIS = apkAchive.getInputStream(arscEntry);
 			File frameworkfile = new File("/Users/xushengxiao/Library/apktool/framework/1.apk");
-			resTable = new ResLoader().getResTable(new File(apkfilename));
+			// -Dresolver.framework=true adds the apktool framework package, loaded once per process
+			resTable = new ResLoader(Boolean.getBoolean("resolver.framework")).getResTable(new File(apkfilename));
+			stringConstants = new StringConstantCache(resTable);
 			// DumpARSC(resTable);
 			buildResIdMap();
 		} catch (Exception e) {
@@ -521,8 +591,7 @@ public class APKResourceResolver {
 	}
 
 	private void buildResIdMap() throws Exception {
-		id2Name = new HashMap<Integer, String>();
-		name2Id = new HashMap<String, Integer>();
+		id2Name = new ResIdIndex();
 		Set<ResPackage> pkgList = resTable.listMainPackages();
 		for (ResPackage pkg : pkgList) {
 			log.info(String.format("+Looking up for Package: %s ...", pkg.getName()));
@@ -532,7 +601,6 @@ public class APKResourceResolver {
 			for (ResResSpec spec : specs) {
 				ResID resId = spec.getId();
 				String typename = spec.getType().getName();
-				String resName = String.format("%s/%s", typename, spec.getName());
 				if (typename.equals("style")) {
 					Set<ResResource> resResSet = spec.listResources();
 					for (ResResource res : resResSet) {
@@ -542,11 +610,11 @@ public class APKResourceResolver {
 					if (goodLayoutFiles == null) {
 						goodLayoutFiles = new HashSet<String>();
 					}
-					goodLayoutFiles.add("res/" + resName + ".xml");
+					goodLayoutFiles.add("res/layout/" + spec.getName() + ".xml");
 				}
-				id2Name.put(resId.id, resName);
-				name2Id.put(resName, resId.id);
-				log.info(String.format("+Found mapping [ID: 0x%08x] -> [Name: %s]", resId.id, resName));
+				id2Name.put(resId.id, typename, spec.getName());
+				if (log.isDebugEnabled())
+					log.debug("+Found mapping [ID: 0x%08x] -> [Name: %s/%s]", resId.id, typename, spec.getName());
 			}
 		}
 	}
@@ -560,6 +628,17 @@ public class APKResourceResolver {
 		return (id2Name != null && !id2Name.isEmpty());
 	}
 
+	/**
+	 * Check if extractARSCAndLayoutFiles() handled the whole APK. It logs and
+	 * returns on an unreadable APK or a decoding error, leaving the tag
+	 * handler output incomplete.
+	 *
+	 * @return
+	 */
+	public boolean isExtracted() {
+		return extracted;
+	}
+
 	/**
 	 * Resolve resource name for a given ID.
 	 *
@@ -570,7 +649,7 @@ public class APKResourceResolver {
 	public String resolveNameForId(int id) {
 		String name = null;
 		if (hasResId())
-			name = id2Name.get(id);
+			name = id2Name.nameFor(id);
 		return name;
 	}
 
@@ -584,7 +663,7 @@ public class APKResourceResolver {
 	public Integer resolveIdForName(String name) {
 		Integer id = null;
 		if (hasResId())
-			id = name2Id.get(name);
+			id = id2Name.idFor(name);
 		return id;
 	}
 
@@ -600,9 +679,9 @@ public class APKResourceResolver {
 	public Integer resolveIdForName(String type, String name) {
 		Integer id = null;
 		if (hasResId()) {
-			id = name2Id.get(String.format("%s/%s", type, name));
+			id = id2Name.idFor(type, name);
 			if (id == null) {
-				id = supportName2id.get(type).get(name);
+				id = supportName2id.idFor(type, name);
 			}
 		}
 		return id;
@@ -638,7 +717,7 @@ public class APKResourceResolver {
 	private String resolveLayoutForId(int id) {
 		String layout = null;
 		if (id2Name != null && !id2Name.isEmpty()) {
-			layout = id2Name.get(id);
+			layout = id2Name.nameFor(id);
 			if (layout != null) {
 				// Misc.ASSERT(layout.startsWith("layout/"), "Invalid ID (%08x)
 				// for layout. Get: %s.", id, layout);
@@ -686,36 +765,21 @@ public class APKResourceResolver {
 	// in some cases, the resId is systematic ID (e.g. 0x0100xxxx) instead of
 	// app-defined ID (0x7f04xxxx)
 	public Map<String, String> possibleStringConstantForId(int resId) throws Exception {
+		return getStringConstants().possibleStringConstantForId(resId);
+	}
+
+	/**
+	 * The memo of string constants of this APK, shared with the tag handler.
+	 *
+	 * @throws Exception
+	 *             if resources.arsc could not be loaded
+	 */
+	public StringConstantCache getStringConstants() throws Exception {
 		if (null == resTable) {
 			log.error("Error resolving String constants in resources.arsc.");
 			throw new Exception("Error resolving String constants in resources.arsc.");
 		}
-		if (resId < 0x7f000000) {
-			return Collections.emptyMap();
-		}
-		Map<String, String> resRet = new TreeMap<String, String>();
-		ResResSpec resSpec;
-		try {
-			resSpec = resTable.getResSpec(resId);
-			log.info("Resource #%08X '%s'<", resId, resSpec.getFullName(true, false));
-			Set<ResResource> resSet = resSpec.listResources();
-			log.info("@: (%d configurations)", resSet.size());
-			for (ResResource res : resSet) {
-				ResValue resVal = res.getValue();
-				if (!(resVal instanceof ResStringValue))
-					continue;
-				char[] lang = res.getConfig().getFlags().language;
-				String language;
-				if ('\0' != lang[0])
-					language = new String(lang);
-				else
-					language = DefaultLanguage;
-				resRet.put(language, resVal.toString());
-			}
-		} catch (AndrolibException e) {
-			log.error(e);
-		}
-		return resRet;
+		return stringConstants;
 	}
 
 	// Return: Language -> String Value. e.g. "en" -> "Hello"
@@ -778,20 +842,10 @@ public class APKResourceResolver {
 					// ID
 					int ID = parser.getAttributeResourceValue(i, 0);
 					try {
-						Map<String, String> possibleStrVals = possibleStringConstantForId(ID);
-						if (!possibleStrVals.isEmpty()) {
-							String val = possibleStrVals.get("en");// ENGLISH as
-																	// default
-																	// choice?
-							if (null == val)
-								val = possibleStrVals.get(DefaultLanguage);// otherwise
-																			// default
-																			// language
-							// fixed here: replace "else"
-							if (null == val)
-								val = "";
+						// ENGLISH as default choice, otherwise default language
+						String val = getStringConstants().preferredStringConstantForId(ID);
+						if (null != val)
 							return val;
-						}
 					} catch (Exception e) {
 						log.error("Fail resolving string values for <%s %s=0x%08x .../>", parser.getName(), attrName,
 								ID);
@@ -864,10 +918,30 @@ public class APKResourceResolver {
 		this.taghandler = handler;
 	}
 
+	/*
+	 * What one layout XML adds to the resolver. Layout XMLs may be decoded
+	 * concurrently; their parts are applied afterwards in entry order, so the
+	 * maps end up as if the XMLs were decoded one by one.
+	 */
+	private class LayoutPart {
+		final String name;
+		final TagXmlHandler handler;
+		boolean started = false;
+		boolean failed = false;
+		final List<ResLayout> nodes = new ArrayList<ResLayout>();
+		final List<String> included = new ArrayList<String>();
+
+		LayoutPart(String name, TagXmlHandler handler) {
+			this.name = name;
+			this.handler = handler;
+		}
+	}
+
 	// <include .../> has not been handled
-	private void handleSingleXML(String name, ZipEntry xml) {
+	private LayoutPart parseSingleXML(String name, ZipEntry xml, TagXmlHandler handler) {
+		LayoutPart part = new LayoutPart(name, handler);
 		try {
-			log.info("Try parsing layout XML '%s'...", name);
+			log.debug("Try parsing layout XML '%s'...", name);
 			InputStream xmlIS = apkAchive.getInputStream(xml);
 			AXmlResourceParser parser = new AXmlResourceParser();
 			parser.open(xmlIS);
@@ -879,25 +953,25 @@ public class APKResourceResolver {
 			// PrintWriter("textoutput/"+namesplit[namesplit.length-1] +
 			// "_output.txt");
 
-			if (taghandler != null) {
-				taghandler.startOneXml(namesplit[namesplit.length - 1]);
+			if (handler != null) {
+				handler.startOneXml(namesplit[namesplit.length - 1]);
 			}
 			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
 				switch (type) {
 				case XmlPullParser.START_DOCUMENT:
-					if (file2Nodes == null)
-						file2Nodes = new HashMap<String, List<ResLayout>>();
-					file2Nodes.put(name, null);
+					part.started = true;
 					break;
 				case XmlPullParser.START_TAG:
+					checkInterrupted();
 					if (!state.isEmpty())
 						peekNode = state.peek();
 
-					currNode = handleOneTag(name, parser, peekNode);
-					if (taghandler != null) {
-						taghandler.setResTable(resTable);
-						taghandler.setId2Name(id2Name);
-						taghandler.handleOneTag(name, parser, peekNode);
+					currNode = handleOneTag(name, parser, peekNode, part);
+					if (handler != null) {
+						handler.setResTable(resTable);
+						handler.setId2Name(id2Name);
+						handler.setStringConstants(stringConstants);
+						handler.handleOneTag(name, parser, peekNode);
 					}
 					// Misc.ASSERT(currNode != null);
 					state.push(currNode);
@@ -913,16 +987,60 @@ public class APKResourceResolver {
 			}
 			parser.close();
 
-			if (taghandler != null) {
-				taghandler.endOneXml(namesplit[namesplit.length - 1]);
+			if (handler != null) {
+				handler.endOneXml(namesplit[namesplit.length - 1]);
 			}
 
+		} catch (CancellationException e) {
+			throw e;
 		} catch (Throwable e) {
-			if (file2Nodes != null)
-				file2Nodes.remove(name);
+			part.failed = true;
 			// Logger.logExcept(e, "Error handling XML '%s'", name);
 			log.error("Error handling XML '" + name + "'", e);
 		}
+		return part;
+	}
+
+	private void applyLayoutPart(LayoutPart part) {
+		if (part.started) {
+			if (file2Nodes == null)
+				file2Nodes = new HashMap<String, List<ResLayout>>();
+			file2Nodes.put(part.name, null);
+		}
+		for (String layout : part.included) {
+			addIncluded2XML(layout, part.name);
+		}
+		for (ResLayout node : part.nodes) {
+			addResLayoutNode(part.name, node.id, node);
+			if (validId(node.id)) {
+				// if (validId(tagId) && editableNode(tagName)) {
+				addEditableField(node.id);
+				if (node.sensitive) {
+					setAsSensitiveField(node.id);
+				} // else {//TODO: currently add all XML with editable node
+				addEditableXML(part.name);
+				// }
+			}
+
+			////////////////////////
+			if (labelWriter != null) {
+				if (node.defaultText != null || node.sensitive) {
+					String prefix = "";
+					if (node.sensitive)
+						prefix = "[PwdLike] ";
+					String toWrite = String.format("{%s}: 0x%08x : %s\n\t%s\n", part.name, node.id, node.tag,
+							prefix + node.defaultText);
+					try {
+						labelWriter.write(toWrite);
+						labelWriter.flush();
+					} catch (Exception e) {
+					}
+				}
+			}
+			////////////////////////
+		}
+		if (part.failed && file2Nodes != null)
+			file2Nodes.remove(part.name);
 	}
 
 	// INCLUDED: e.g. 'layout/included' for 'res/layout/included.xml'
@@ -942,6 +1060,8 @@ public class APKResourceResolver {
 	private void addResLayoutNode(String xmlFile, int id, ResLayout node) {
 		List<ResLayout> nodesInFile, nodesForId;
 
+		if (file2Nodes == null)
+			file2Nodes = new HashMap<String, List<ResLayout>>();
 		nodesInFile = file2Nodes.get(xmlFile);
 		if (nodesInFile == null) {
 			nodesInFile = new LinkedList<ResLayout>();
@@ -1066,7 +1186,9 @@ public class APKResourceResolver {
 
 	private TagXmlHandler taghandler;
 
-	private ResLayout handleOneTag(String xmlFile, AXmlResourceParser parser, ResLayout parent) {
+	// runs on the decoding threads: the node is only recorded in part, see
+	// applyLayoutPart()
+	private ResLayout handleOneTag(String xmlFile, AXmlResourceParser parser, ResLayout parent, LayoutPart part) {
 		String tagName = parser.getName();
 		// in USAA, a layout file has root node <selector>. This file actually
 		// should be in drawable-xxxx/ and it is a
@@ -1102,7 +1224,7 @@ public class APKResourceResolver {
 				tagId = incId;
 			String layout = resolveLayoutForId(incId);
 			if (null != layout)
-				addIncluded2XML(layout, xmlFile);
+				part.included.add(layout);
 		}
 		String tagText = getAttributeTextValue(parser, "text");
 		if (null != tagText)
@@ -1112,37 +1234,12 @@ public class APKResourceResolver {
 		}
 		int tagInputType = getAttributeInputType(parser, "inputType");
 		boolean isPwd = getAttributeBoolValue(parser, "password");
-		log.info("+TAG: %s [ID: %08x , TEXT: \"%s\"] (%s)", tagName, tagId, tagText, xmlFile);
-		log.info("*@<");
+		log.debug("+TAG: %s [ID: %08x , TEXT: \"%s\"] (%s)", tagName, tagId, tagText, xmlFile);
+		log.debug("*@<");
 
 		boolean sensitive = SensitiveInputField.validate(tagInputType, isPwd);
 		ResLayout node = new ResLayout(xmlFile, tagName, tagId, tagText, sensitive, parent);
-		addResLayoutNode(xmlFile, tagId, node);
-		if (validId(tagId)) {
-			// if (validId(tagId) && editableNode(tagName)) {
-			addEditableField(tagId);
-			if (sensitive) {
-				setAsSensitiveField(tagId);
-			} // else {//TODO: currently add all XML with editable node
-			addEditableXML(xmlFile);
-			// }
-		}
-
-		////////////////////////
-		if (labelWriter != null) {
-			if (tagText != null || sensitive) {
-				String prefix = "";
-				if (sensitive)
-					prefix = "[PwdLike] ";
-				String toWrite = String.format("{%s}: 0x%08x : %s\n\t%s\n", xmlFile, tagId, tagName, prefix + tagText);
-				try {
-					labelWriter.write(toWrite);
-					labelWriter.flush();
-				} catch (Exception e) {
-				}
-			}
-		}
-		////////////////////////
+		part.nodes.add(node);
 		return node;
 	}
 
@@ -1160,16 +1257,43 @@ public class APKResourceResolver {
 		editableFields.add(Integer.valueOf(resId));
 	}
 
-	private void extractLayoutXML(Map<String, ZipEntry> layoutEntries) {
+	private void extractLayoutXML(Map<String, ZipEntry> layoutEntries) throws Exception {
+		List<String> names = new ArrayList<String>();
 		Set<Map.Entry<String, ZipEntry>> entrySet = layoutEntries.entrySet();
 		for (Map.Entry<String, ZipEntry> entry : entrySet) {
 			String name = entry.getKey();
 			ZipEntry xml = entry.getValue();
-			log.info("handling %s,%s", name, xml);
+			log.debug("handling %s,%s", name, xml);
 			if (isGoodLayoutFile(name))
-				handleSingleXML(name, xml);
+				names.add(name);
+		}
+		if (decodeThreads > 1 && names.size() > 1 && (taghandler == null || taghandler.supportsFork())) {
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(decodeThreads, names.size()));
+			try {
+				List<Future<LayoutPart>> parts = new ArrayList<Future<LayoutPart>>();
+				for (String name : names) {
+					ZipEntry xml = layoutEntries.get(name);
+					TagXmlHandler handler = taghandler == null ? null : taghandler.forkForXml();
+					parts.add(pool.submit(() -> parseSingleXML(name, xml, handler)));
+				}
+				for (Future<LayoutPart> future : parts) {
+					LayoutPart part = future.get();
+					applyLayoutPart(part);
+					if (taghandler != null) {
+						taghandler.join(part.handler);
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		} else {
+			for (String name : names) {
+				applyLayoutPart(parseSingleXML(name, layoutEntries.get(name), taghandler));
+			}
 		}
 		postHandleLayoutXML();
+		if (stringConstants != null)
+			log.info("%s: %s", apkfilename, stringConstants);
 		if (taghandler != null) {			
 			taghandler.endOneApp(apkfilename);
 		}
@@ -1205,7 +1329,7 @@ public class APKResourceResolver {
 		included2XMLs = null;
 	}
 
-	public HashMap<Integer, String> getIdToName() {
+	public ResIdIndex getIdToName() {
 		return id2Name;
 	}
 
@@ -0,0 +1,118 @@
+package edu.cwru.android.ui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.kxml2.io.KXmlSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.TypedValue;
+import brut.androlib.res.decoder.AXmlResourceParser;
+
+/**
+ * Turns a compiled XML file of an APK (layout, drawable, menu ...) back into
+ * text XML, the way apktool writes it to res/: references are written by name
+ * ("@layout/item", "@android:drawable/btn_default", "?attr/colorAccent"),
+ * other values as AXmlResourceParser prints them. App ids are named with the
+ * ResIdIndex of the APK, framework ids with the android.R classes of
+ * layoutlib.
+ */
+public class BinaryXmlDecoder {
+
+	private static org.apache.logging.log4j.Logger log = LogManager.getFormatterLogger(BinaryXmlDecoder.class);
+
+	private static HashMap<Integer, String> frameworkNames = null;
+
+	private final ResIdIndex appNames;
+
+	public BinaryXmlDecoder(ResIdIndex appNames) {
+		this.appNames = appNames;
+	}
+
+	public byte[] decode(InputStream in) throws IOException, XmlPullParserException {
+		AXmlResourceParser parser = new AXmlResourceParser();
+		parser.open(in);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		KXmlSerializer out = new KXmlSerializer();
+		out.setOutput(bytes, "UTF-8");
+		out.startDocument("UTF-8", null);
+		int type;
+		while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+			switch (type) {
+			case XmlPullParser.START_TAG:
+				int depth = parser.getDepth();
+				for (int i = parser.getNamespaceCount(depth - 1); i < parser.getNamespaceCount(depth); i++) {
+					out.setPrefix(parser.getNamespacePrefix(i), parser.getNamespaceUri(i));
+				}
+				out.startTag(namespace(parser.getNamespace()), parser.getName());
+				for (int i = 0; i < parser.getAttributeCount(); i++) {
+					out.attribute(namespace(parser.getAttributeNamespace(i)), parser.getAttributeName(i),
+							attributeValue(parser, i));
+				}
+				break;
+			case XmlPullParser.END_TAG:
+				out.endTag(namespace(parser.getNamespace()), parser.getName());
+				break;
+			case XmlPullParser.TEXT:
+				out.text(parser.getText());
+				break;
+			}
+		}
+		out.endDocument();
+		parser.close();
+		return bytes.toByteArray();
+	}
+
+	private String attributeValue(AXmlResourceParser parser, int i) {
+		int type = parser.getAttributeValueType(i);
+		if (type == TypedValue.TYPE_REFERENCE || type == TypedValue.TYPE_ATTRIBUTE) {
+			int id = parser.getAttributeValueData(i);
+			if (id == 0) {
+				return "@null";
+			}
+			String name = nameFor(id);
+			if (name != null) {
+				return (type == TypedValue.TYPE_REFERENCE ? "@" : "?") + name;
+			}
+			log.debug("No name for resource #%08X", id);
+		}
+		return parser.getAttributeValue(i);
+	}
+
+	private String nameFor(int id) {
+		if ((id >>> 24) == 0x01) {
+			String name = frameworkNames().get(id);
+			return name == null ? null : "android:" + name;
+		}
+		return appNames == null ? null : appNames.nameFor(id);
+	}
+
+	private static String namespace(String ns) {
+		return ns == null || ns.isEmpty() ? null : ns;
+	}
+
+	// '<type>/<name>' of the public framework ids, read once from android.R
+	private static synchronized HashMap<Integer, String> frameworkNames() {
+		if (frameworkNames == null) {
+			frameworkNames = new HashMap<>();
+			try {
+				for (Class<?> type : Class.forName("android.R").getClasses()) {
+					for (Field field : type.getFields()) {
+						if (field.getType() == int.class && Modifier.isStatic(field.getModifiers())) {
+							frameworkNames.put(field.getInt(null), type.getSimpleName() + "/" + field.getName());
+						}
+					}
+				}
+			} catch (Exception e) {
+				log.error("android.R is not available, framework references are left as ids: %s", e);
+			}
+		}
+		return frameworkNames;
+	}
+}
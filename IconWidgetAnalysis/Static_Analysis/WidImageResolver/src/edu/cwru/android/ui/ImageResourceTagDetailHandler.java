@@ -4,9 +4,9 @@ package edu.cwru.android.ui;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -22,14 +22,10 @@ import java.util.Iterator;
 import org.apache.logging.log4j.LogManager;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 
 import android.util.TypedValue;
-import brut.androlib.AndrolibException;
-import brut.androlib.res.data.ResResSpec;
-import brut.androlib.res.data.ResResource;
 import brut.androlib.res.data.ResTable;
-import brut.androlib.res.data.value.ResStringValue;
-import brut.androlib.res.data.value.ResValue;
 import brut.androlib.res.decoder.AXmlResourceParser;
 import edu.cwru.android.ui.APKResourceResolver.ResLayout;
 
@@ -43,8 +39,25 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 	private JSONArray views = new JSONArray();
 	private JSONObject currentview;
 
+	// streaming mode: every layout and tag is written to out as soon as it is
+	// found, instead of keeping the JSON tree of the whole app
+	private boolean streaming = false;
+	private boolean arrayOpen = false;// "[" of the app written
+	private boolean viewOpen = false;// "tags" array of a layout not closed yet
+	private boolean firstTag;
+	// a fork writes its one layout here; join() copies it to out
+	private StringWriter fragment;
+
 	@Override
 	public void endOneApp(String apkfilename) {
+		if (streaming) {
+			closeView();
+			if (!arrayOpen) {
+				out.print("[");
+			}
+			out.println("]");
+			return;
+		}
 		out.println(views.toJSONString());
 	}
 
@@ -55,12 +68,69 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 		this.out = out;
 	}
 
+	/**
+	 * @param streaming
+	 *            write the same JSON incrementally, so memory does not grow
+	 *            with the number of image tags of the app.
+	 */
+	public ImageResourceTagDetailHandler(PrintWriter out, boolean streaming) {
+		this.out = out;
+		this.streaming = streaming;
+	}
+
 	public void addTagsToInspect(String tag) {
 		tagsToInspect.add(tag);
 	}
 
+	@Override
+	public boolean supportsFork() {
+		return true;
+	}
+
+	@Override
+	public TagXmlHandler forkForXml() {
+		ImageResourceTagDetailHandler part = new ImageResourceTagDetailHandler(out, streaming);
+		part.tagsToInspect = tagsToInspect;
+		if (streaming && out != null) {
+			part.fragment = new StringWriter();
+			part.out = new PrintWriter(part.fragment);
+			// the enclosing array and the separators are written by join()
+			part.arrayOpen = true;
+		}
+		return part;
+	}
+
+	@Override
+	public void join(TagXmlHandler part) {
+		ImageResourceTagDetailHandler other = (ImageResourceTagDetailHandler) part;
+		if (other.fragment != null) {
+			other.closeView();
+			other.out.flush();
+			if (other.fragment.getBuffer().length() > 0) {
+				closeView();
+				out.print(arrayOpen ? "," : "[");
+				arrayOpen = true;
+				out.print(other.fragment.getBuffer());
+			}
+			return;
+		}
+		views.addAll(other.views);
+	}
+
 	@Override
 	public void startOneXml(String xmlname) {
+		if (streaming) {
+			// a layout whose parsing failed never got its endOneXml()
+			closeView();
+			if (fragment == null) {
+				out.print(arrayOpen ? "," : "[");
+				arrayOpen = true;
+			}
+			out.print("{\"name\":\"" + JSONValue.escape(xmlname) + "\",\"tags\":[");
+			viewOpen = true;
+			firstTag = true;
+			return;
+		}
 		JSONObject view = new JSONObject();
 		view.put("name", xmlname);
 		view.put("tags", new JSONArray());
@@ -71,6 +141,9 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 	@Override
 	public void endOneXml(String xmlname) {
 		super.endOneXml(xmlname);
+		if (streaming) {
+			closeView();
+		}
 
 	}
 
@@ -79,33 +152,7 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 			log.error("Error resolving String constants in resources.arsc.");
 			throw new Exception("Error resolving String constants in resources.arsc.");
 		}
-		if (resId < 0x7f000000) {
-			return Collections.emptyMap();
-		}
-		Map<String, String> resRet = new TreeMap<String, String>();
-		ResResSpec resSpec;
-		try {
-			resSpec = resTable.getResSpec(resId);
-
-			log.info("Resource #%08X '%s'<", resId, resSpec.getFullName(true, false));
-			Set<ResResource> resSet = resSpec.listResources();
-			log.info("@: (%d configurations)", resSet.size());
-			for (ResResource res : resSet) {
-				ResValue resVal = res.getValue();
-				if (!(resVal instanceof ResStringValue))
-					continue;
-				char[] lang = res.getConfig().getFlags().language;
-				String language;
-				if ('\0' != lang[0])
-					language = new String(lang);
-				else
-					language = DefaultLanguage;
-				resRet.put(language, resVal.toString());
-			}
-		} catch (AndrolibException e) {
-			log.error(e);
-		}
-		return resRet;
+		return stringConstants.possibleStringConstantForId(resId);
 	}
 
 	private int getAttributeIdValue(AXmlResourceParser parser, String attr) {
@@ -199,7 +246,7 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 	public ResLayout handleOneTag(String xmlFile, AXmlResourceParser parser, ResLayout parent) {
 
 		String tagName = parser.getName();
-		log.info("handling " + tagName + " in " + xmlFile);
+		log.debug("handling %s in %s", tagName, xmlFile);
 		int tagId = getAttributeIdValue(parser, "id");
 
 		if (tagsToInspect.size() > 0 && !tagsToInspect.contains(tagName)) {
@@ -225,20 +272,14 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 				// ID
 				int ID = parser.getAttributeResourceValue(i, 0);
 				try {
-					Map<String, String> possibleStrVals = possibleStringConstantForId(ID);
-					if (!possibleStrVals.isEmpty()) {
-						String val = possibleStrVals.get("en");// ENGLISH as
-																// default
-																// choice?
-						if (null == val)
-							val = possibleStrVals.get(DefaultLanguage);// otherwise
-																		// default
-																		// language
-						// fixed here: replace "else"
-						if (null == val)
-							val = "";
-						value = val;
+					if (null == resTable) {
+						log.error("Error resolving String constants in resources.arsc.");
+						throw new Exception("Error resolving String constants in resources.arsc.");
 					}
+					// ENGLISH as default choice, otherwise default language
+					String val = stringConstants.preferredStringConstantForId(ID);
+					if (null != val)
+						value = val;
 				} catch (Exception e) {
 					log.error("Fail resolving string values for <%s %s=0x%08x .../>", parser.getName(), attrName, ID);
 				}
@@ -249,7 +290,7 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 
 			if (value != null) {
 				if (valueType == TypedValue.TYPE_REFERENCE && value.startsWith("@")) {
-					String temp = id2Name.get(Integer.parseInt(value.replace("@", "")));
+					String temp = id2Name.nameFor(Integer.parseInt(value.replace("@", "")));
 					if (temp != null) {
 						value = temp;
 					}
@@ -270,10 +311,12 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 			JSONObject tag = new JSONObject();
 			tag.put("name", tagName);
 			tag.put("id", tagId);
-			tag.put("idName", id2Name.get(tagId));
+			tag.put("idName", id2Name.nameFor(tagId));
 			JSONArray imgs = new JSONArray();
 			tag.put("imgs", imgs);
-			((JSONArray) currentview.get("tags")).add(tag);
+			if (!streaming) {
+				((JSONArray) currentview.get("tags")).add(tag);
+			}
 			// out.print(tagName + "-> [id=" + tagId);
 			// out.print(" (" + id2Name.get(tagId)+")");
 
@@ -284,6 +327,13 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 				img.put("value", imgvalue.get(j));
 				imgs.add(img);
 			}
+			if (streaming) {
+				if (!firstTag) {
+					out.print(",");
+				}
+				firstTag = false;
+				out.print(tag.toJSONString());
+			}
 
 			// out.println("]");
 			// out.flush();
@@ -292,4 +342,11 @@ public class ImageResourceTagDetailHandler extends TagXmlHandler {
 		return parent;
 	}
 
+	private void closeView() {
+		if (viewOpen) {
+			out.print("]}");
+			viewOpen = false;
+		}
+	}
+
 }
@@ -6,13 +6,11 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -21,12 +19,7 @@ import java.util.HashSet;
 import org.apache.logging.log4j.LogManager;
 
 import android.util.TypedValue;
-import brut.androlib.AndrolibException;
-import brut.androlib.res.data.ResResSpec;
-import brut.androlib.res.data.ResResource;
 import brut.androlib.res.data.ResTable;
-import brut.androlib.res.data.value.ResStringValue;
-import brut.androlib.res.data.value.ResValue;
 import brut.androlib.res.decoder.AXmlResourceParser;
 import edu.cwru.android.ui.APKResourceResolver.ResLayout;
 
@@ -41,37 +34,40 @@ public class ImageResourceTagHandler extends TagXmlHandler {
 	public ImageResourceTagHandler() {
 	}
 
+	@Override
+	public boolean supportsFork() {
+		return true;
+	}
+
+	@Override
+	public TagXmlHandler forkForXml() {
+		return new ImageResourceTagHandler();
+	}
+
+	@Override
+	public void join(TagXmlHandler part) {
+		ImageResourceTagHandler other = (ImageResourceTagHandler) part;
+		for (Entry<String, List<String>> e : other.map.entrySet()) {
+			if (!map.containsKey(e.getKey())) {
+				map.put(e.getKey(), new ArrayList<>());
+			}
+			map.get(e.getKey()).addAll(e.getValue());
+		}
+		for (Entry<String, Integer> e : other.stats.entrySet()) {
+			if (!stats.containsKey(e.getKey())) {
+				stats.put(e.getKey(), e.getValue());
+			} else {
+				stats.put(e.getKey(), stats.get(e.getKey()) + e.getValue());
+			}
+		}
+	}
+
 	public Map<String, String> possibleStringConstantForId(int resId) throws Exception {
 		if (null == resTable) {
 			log.error("Error resolving String constants in resources.arsc.");
 			throw new Exception("Error resolving String constants in resources.arsc.");
 		}
-		if (resId < 0x7f000000) {
-			return Collections.emptyMap();
-		}
-		Map<String, String> resRet = new TreeMap<String, String>();
-		ResResSpec resSpec;
-		try {
-			resSpec = resTable.getResSpec(resId);
-			log.info("Resource #%08X '%s'<", resId, resSpec.getFullName(true, false));
-			Set<ResResource> resSet = resSpec.listResources();
-			log.info("@: (%d configurations)", resSet.size());
-			for (ResResource res : resSet) {
-				ResValue resVal = res.getValue();
-				if (!(resVal instanceof ResStringValue))
-					continue;
-				char[] lang = res.getConfig().getFlags().language;
-				String language;
-				if ('\0' != lang[0])
-					language = new String(lang);
-				else
-					language = DefaultLanguage;
-				resRet.put(language, resVal.toString());
-			}
-		} catch (AndrolibException e) {
-			log.error(e);
-		}
-		return resRet;
+		return stringConstants.possibleStringConstantForId(resId);
 	}
 
 	private int getAttributeIdValue(AXmlResourceParser parser, String attr) {
@@ -172,7 +168,7 @@ public class ImageResourceTagHandler extends TagXmlHandler {
 	public ResLayout handleOneTag(String xmlFile, AXmlResourceParser parser, ResLayout parent) {
 
 		String tagName = parser.getName();
-		log.info("handling " + tagName + " in " + xmlFile);
+		log.debug("handling %s in %s", tagName, xmlFile);
 		int tagId = getAttributeIdValue(parser, "id");
 
 		for (int i = 0; i < parser.getAttributeCount(); i++) {
@@ -184,20 +180,14 @@ public class ImageResourceTagHandler extends TagXmlHandler {
 				// ID
 				int ID = parser.getAttributeResourceValue(i, 0);
 				try {
-					Map<String, String> possibleStrVals = possibleStringConstantForId(ID);
-					if (!possibleStrVals.isEmpty()) {
-						String val = possibleStrVals.get("en");// ENGLISH as
-																// default
-																// choice?
-						if (null == val)
-							val = possibleStrVals.get(DefaultLanguage);// otherwise
-																		// default
-																		// language
-						// fixed here: replace "else"
-						if (null == val)
-							val = "";
-						value = val;
+					if (null == resTable) {
+						log.error("Error resolving String constants in resources.arsc.");
+						throw new Exception("Error resolving String constants in resources.arsc.");
 					}
+					// ENGLISH as default choice, otherwise default language
+					String val = stringConstants.preferredStringConstantForId(ID);
+					if (null != val)
+						value = val;
 				} catch (Exception e) {
 					log.error("Fail resolving string values for <%s %s=0x%08x .../>", parser.getName(), attrName, ID);
 				}
@@ -211,7 +201,7 @@ public class ImageResourceTagHandler extends TagXmlHandler {
 				map.put(key, new ArrayList<>());
 			}
 			if (valueType == TypedValue.TYPE_REFERENCE) {
-				value = id2Name.get(Integer.parseInt(value.replace("@", "")));
+				value = id2Name.nameFor(Integer.parseInt(value.replace("@", "")));
 			}
 
 			map.get(key).add(attrName + "=" + valueType + ":" + value);
@@ -0,0 +1,328 @@
+package edu.cwru.android.ui;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.kxml2.io.KXmlSerializer;
+
+import com.android.io.IAbstractFile;
+import com.android.io.IAbstractFolder;
+import com.android.io.IAbstractResource;
+import com.android.io.StreamException;
+
+import brut.androlib.AndrolibException;
+import brut.androlib.res.data.ResPackage;
+import brut.androlib.res.data.ResResSpec;
+import brut.androlib.res.data.ResResource;
+import brut.androlib.res.data.ResTable;
+import brut.androlib.res.xml.ResValuesXmlSerializable;
+
+/**
+ * The res/ folder of an APK as apktool would decode it, built in memory from
+ * the ZIP for the project ResourceRepository of APKRenderer, so nothing is
+ * written to apk_output/.
+ *
+ * XML files are decoded with {@link BinaryXmlDecoder}; values*&#47;*.xml are
+ * generated from the ResTable of the APKResourceResolver, one file per type
+ * and configuration. Other files (images) are only listed, their bytes are
+ * read from the APK if asked for. Files are located at
+ * "&lt;apk&gt;!/res/&lt;folder&gt;/&lt;file&gt;": RenderService and
+ * MyLayoutlibCallBack open layouts through {@link #open(String)}, but
+ * layoutlib loads bitmaps by path itself, so images are not drawn.
+ */
+public class InMemoryResFolder implements IAbstractFolder {
+
+	private static org.apache.logging.log4j.Logger log = LogManager.getFormatterLogger(InMemoryResFolder.class);
+
+	private final InMemoryResFolder parent;
+	private final String name;
+	private final String location;
+	private final TreeMap<String, IAbstractResource> members = new TreeMap<>();
+	// root only: location -> file
+	private final HashMap<String, MemFile> files;
+	private final String apkfile;
+
+	private InMemoryResFolder(InMemoryResFolder parent, String name, String location, String apkfile) {
+		this.parent = parent;
+		this.name = name;
+		this.location = location;
+		this.apkfile = apkfile;
+		this.files = parent == null ? new HashMap<String, MemFile>() : parent.files;
+	}
+
+	/**
+	 * @param resolver
+	 *            the resolver of apkfile, after extractARSCAndLayoutFiles()
+	 */
+	public static InMemoryResFolder fromApk(String apkfile, APKResourceResolver resolver) throws Exception {
+		InMemoryResFolder root = new InMemoryResFolder(null, "res", apkfile + "!/res", apkfile);
+		BinaryXmlDecoder decoder = new BinaryXmlDecoder(resolver.getIdToName());
+		int failed = 0;
+		try (ZipFile zip = new ZipFile(apkfile)) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String[] path = entry.getName().split("/");
+				if (entry.isDirectory() || path.length != 3 || !path[0].equals("res")) {
+					continue;
+				}
+				byte[] content = null;
+				if (path[2].endsWith(".xml")) {
+					try (InputStream in = zip.getInputStream(entry)) {
+						content = decoder.decode(in);
+					} catch (Exception e) {
+						log.debug("Cannot decode %s: %s", entry.getName(), e);
+						failed++;
+						continue;
+					}
+				}
+				root.folder(path[1]).add(path[2], content, entry.getName());
+			}
+		}
+		int values = addValues(root, resolver.getStringConstants().getResTable());
+		log.info("In-memory res/ of %s: %d files, %d values files, %d XML files not decoded", apkfile,
+				root.files.size() - values, values, failed);
+		return root;
+	}
+
+	/**
+	 * @return true if location is a file of this tree
+	 */
+	public boolean contains(String location) {
+		return files.containsKey(location);
+	}
+
+	/**
+	 * @return the content of the file at location, or null if it is not in
+	 *         this tree
+	 */
+	public InputStream open(String location) throws IOException {
+		MemFile file = files.get(location);
+		return file == null ? null : file.open();
+	}
+
+	// values<qualifiers>/<type>s.xml per type and configuration, as apktool names them
+	private static int addValues(InMemoryResFolder root, ResTable resTable) throws IOException {
+		if (resTable == null) {
+			return 0;
+		}
+		TreeMap<String, List<ResResource>> valuesFiles = new TreeMap<>();
+		for (ResPackage pkg : resTable.listMainPackages()) {
+			for (ResResSpec spec : pkg.listResSpecs()) {
+				String type = spec.getType().getName();
+				for (ResResource res : spec.listResources()) {
+					if (res.getValue() instanceof ResValuesXmlSerializable) {
+						String file = "values" + res.getConfig().getFlags().getQualifiers() + "/"
+								+ (type.endsWith("s") ? type : type + "s") + ".xml";
+						List<ResResource> list = valuesFiles.get(file);
+						if (list == null) {
+							list = new ArrayList<>();
+							valuesFiles.put(file, list);
+						}
+						list.add(res);
+					}
+				}
+			}
+		}
+
+		int skipped = 0;
+		for (Map.Entry<String, List<ResResource>> file : valuesFiles.entrySet()) {
+			StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+			for (ResResource res : file.getValue()) {
+				// one serializer per item, so an item that cannot be encoded
+				// (e.g. a reference into a missing framework package) is
+				// dropped without breaking the file
+				StringWriter item = new StringWriter();
+				KXmlSerializer serializer = new KXmlSerializer();
+				serializer.setOutput(item);
+				try {
+					((ResValuesXmlSerializable) res.getValue()).serializeToResValuesXml(serializer, res);
+					serializer.flush();
+					xml.append(item).append('\n');
+				} catch (AndrolibException | RuntimeException e) {
+					skipped++;
+				}
+			}
+			xml.append("</resources>\n");
+			String[] path = file.getKey().split("/");
+			root.folder(path[0]).add(path[1], xml.toString().getBytes(StandardCharsets.UTF_8), null);
+		}
+		if (skipped > 0) {
+			log.info("%d values could not be encoded", skipped);
+		}
+		return valuesFiles.size();
+	}
+
+	private InMemoryResFolder folder(String folderName) {
+		IAbstractResource folder = members.get(folderName);
+		if (!(folder instanceof InMemoryResFolder)) {
+			folder = new InMemoryResFolder(this, folderName, location + "/" + folderName, apkfile);
+			members.put(folderName, folder);
+		}
+		return (InMemoryResFolder) folder;
+	}
+
+	private void add(String fileName, byte[] content, String zipEntry) {
+		MemFile file = new MemFile(this, fileName, content, zipEntry);
+		members.put(fileName, file);
+		files.put(file.getOsLocation(), file);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getOsLocation() {
+		return location;
+	}
+
+	@Override
+	public boolean exists() {
+		return true;
+	}
+
+	@Override
+	public IAbstractFolder getParentFolder() {
+		return parent;
+	}
+
+	@Override
+	public boolean delete() {
+		return false;
+	}
+
+	@Override
+	public boolean hasFile(String name) {
+		return members.containsKey(name);
+	}
+
+	@Override
+	public IAbstractFile getFile(String name) {
+		IAbstractResource member = members.get(name);
+		return member instanceof IAbstractFile ? (IAbstractFile) member : null;
+	}
+
+	@Override
+	public IAbstractFolder getFolder(String name) {
+		IAbstractResource member = members.get(name);
+		return member instanceof IAbstractFolder ? (IAbstractFolder) member : null;
+	}
+
+	@Override
+	public IAbstractResource[] listMembers() {
+		return members.values().toArray(new IAbstractResource[members.size()]);
+	}
+
+	@Override
+	public String[] list(FilenameFilter filter) {
+		List<String> names = new ArrayList<>();
+		for (String member : members.keySet()) {
+			if (filter == null || filter.accept(this, member)) {
+				names.add(member);
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	private static class MemFile implements IAbstractFile {
+		private final InMemoryResFolder folder;
+		private final String name;
+		// null: read zipEntry from the APK when asked for
+		private final byte[] content;
+		private final String zipEntry;
+
+		MemFile(InMemoryResFolder folder, String name, byte[] content, String zipEntry) {
+			this.folder = folder;
+			this.name = name;
+			this.content = content;
+			this.zipEntry = zipEntry;
+		}
+
+		InputStream open() throws IOException {
+			if (content != null) {
+				return new ByteArrayInputStream(content);
+			}
+			try (ZipFile zip = new ZipFile(folder.apkfile)) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (InputStream in = zip.getInputStream(zip.getEntry(zipEntry))) {
+					byte[] buf = new byte[8192];
+					int n;
+					while ((n = in.read(buf)) > 0) {
+						bytes.write(buf, 0, n);
+					}
+				}
+				return new ByteArrayInputStream(bytes.toByteArray());
+			}
+		}
+
+		@Override
+		public InputStream getContents() throws StreamException {
+			try {
+				return open();
+			} catch (IOException e) {
+				throw new StreamException(e, this);
+			}
+		}
+
+		@Override
+		public void setContents(InputStream source) throws StreamException {
+			throw new StreamException(new IOException("read-only"), this);
+		}
+
+		@Override
+		public OutputStream getOutputStream() throws StreamException {
+			throw new StreamException(new IOException("read-only"), this);
+		}
+
+		@Override
+		public PreferredWriteMode getPreferredWriteMode() {
+			return PreferredWriteMode.INPUTSTREAM;
+		}
+
+		@Override
+		public long getModificationStamp() {
+			return 0;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getOsLocation() {
+			return folder.location + "/" + name;
+		}
+
+		@Override
+		public boolean exists() {
+			return true;
+		}
+
+		@Override
+		public IAbstractFolder getParentFolder() {
+			return folder;
+		}
+
+		@Override
+		public boolean delete() {
+			return false;
+		}
+	}
+}
@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
+import org.xmlpull.v1.XmlPullParser;
 
 import com.android.SdkConstants;
 import com.android.ide.common.rendering.api.ActionBarCallback;
@@ -31,6 +32,7 @@ public class MyLayoutlibCallBack extends LayoutlibCallback {
 	private Set<String> classes;
 	private static org.apache.logging.log4j.Logger log = LogManager.getFormatterLogger(MyLayoutlibCallBack.class);
 	private Map<ResourceType, Map<String, ResourceValue>> res;
+	private InMemoryResFolder resFolder;
 
 	public MyLayoutlibCallBack(APKResourceResolver resolver, Set<String> classes,
 			Map<ResourceType, Map<String, ResourceValue>> map) {
@@ -40,6 +42,15 @@ public class MyLayoutlibCallBack extends LayoutlibCallback {
 		this.res = map;
 	}
 
+	/**
+	 * Layouts of resFolder are then parsed from memory, see
+	 * {@link #getParser(ResourceValue)}.
+	 */
+	public MyLayoutlibCallBack setResFolder(InMemoryResFolder resFolder) {
+		this.resFolder = resFolder;
+		return this;
+	}
+
 	@Override
 	public ActionBarCallback getActionBarCallback() {
 		// TODO Auto-generated method stub
@@ -73,8 +84,19 @@ public class MyLayoutlibCallBack extends LayoutlibCallback {
 
 	@Override
 	public ILayoutPullParser getParser(ResourceValue arg0) {
-		// TODO Auto-generated method stub
-		return null;
+		// null lets layoutlib read the file from disk
+		if (resFolder == null || arg0 == null || arg0.getValue() == null || !resFolder.contains(arg0.getValue())) {
+			return null;
+		}
+		try {
+			XmlParser parser = new XmlParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+			parser.setInput(resFolder.open(arg0.getValue()), "UTF-8");
+			return parser;
+		} catch (Exception e) {
+			log.error("Cannot parse %s: %s", arg0.getValue(), e);
+			return null;
+		}
 	}
 
 	@Override
@@ -193,12 +193,18 @@ public class RenderService {
 			throw new IllegalArgumentException("layout does not exist");
 		}
 
-		File layoutFile = new File(value.getValue());
-
+		// the callback parses layouts that are not on disk (InMemoryResFolder)
 		ILayoutPullParser parser = null;
-		parser = new XmlParser();
-		parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
-		parser.setInput(new FileInputStream(layoutFile), "UTF-8"); //$NON-NLS-1$
+		if (mLayoutlibCallback != null) {
+			parser = mLayoutlibCallback.getParser(value);
+		}
+		if (parser == null) {
+			File layoutFile = new File(value.getValue());
+
+			parser = new XmlParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+			parser.setInput(new FileInputStream(layoutFile), "UTF-8"); //$NON-NLS-1$
+		}
 
 		figureSomeValuesOut();
 
@@ -63,6 +63,7 @@ import android.support.annotation.BoolRes;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -80,6 +81,9 @@ public class RenderServiceFactory {
 	private FrameworkResources mResources;
 	private FrameworkResources supportResources;
 	private Map<ResourceType, Map<String, ResourceValue>> res;
+	// config key -> configured framework / support resources
+	private final HashMap<String, Map<ResourceType, Map<String, ResourceValue>>> frameworkConfigured = new HashMap<>();
+	private final HashMap<String, Map<ResourceType, Map<String, ResourceValue>>> supportConfigured = new HashMap<>();
 
 	public Map<ResourceType, Map<String, ResourceValue>> getResTable() {
 		return res;
@@ -174,11 +178,13 @@ public class RenderServiceFactory {
 	public ResourceResolver createResourceResolver(FolderConfiguration config, ResourceRepository projectResources,
 			String themeName, boolean isProjectTheme) {
 
-		Map<ResourceType, Map<String, ResourceValue>> configedProjectRes = supportResources
-				.getConfiguredResources(config);
+		Map<ResourceType, Map<String, ResourceValue>> configedProjectRes = new EnumMap<ResourceType, Map<String, ResourceValue>>(
+				ResourceType.class);
+		configedProjectRes.putAll(configuredResources(supportConfigured, supportResources, config));
 		configedProjectRes.putAll(projectResources.getConfiguredResources(config));
 
-		Map<ResourceType, Map<String, ResourceValue>> configedFrameworkRes = mResources.getConfiguredResources(config);
+		Map<ResourceType, Map<String, ResourceValue>> configedFrameworkRes = configuredResources(frameworkConfigured,
+				mResources, config);
 		// configedFrameworkRes.putAll(supportResources.getConfiguredResources(config));
 
 		return ResourceResolver.create(configedProjectRes, configedFrameworkRes, themeName, isProjectTheme);
@@ -341,6 +347,25 @@ public class RenderServiceFactory {
 		}
 	}
 
+	/**
+	 * The framework and support resources only depend on the config, so they
+	 * are resolved once per config (API level, screen, ...) and reused by every
+	 * APK rendered with this factory. Callers must not modify the result.
+	 */
+	private Map<ResourceType, Map<String, ResourceValue>> configuredResources(
+			HashMap<String, Map<ResourceType, Map<String, ResourceValue>>> cache, FrameworkResources resources,
+			FolderConfiguration config) {
+		String key = config.getUniqueKey();
+		synchronized (cache) {
+			Map<ResourceType, Map<String, ResourceValue>> configured = cache.get(key);
+			if (configured == null) {
+				configured = resources.getConfiguredResources(config);
+				cache.put(key, configured);
+			}
+			return configured;
+		}
+	}
+
 	private FrameworkResources loadResources(File resFolder, ILogger log) {
 		FolderWrapper path = new FolderWrapper(resFolder);
 		FrameworkResources resources = new FrameworkResources(path);
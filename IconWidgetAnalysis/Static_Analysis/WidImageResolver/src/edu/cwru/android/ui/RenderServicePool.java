@@ -0,0 +1,88 @@
+package edu.cwru.android.ui;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Process-wide cache of what APKRenderer used to set up again for every APK:
+ * the initialized {@link RenderServiceFactory} (layoutlib, framework and
+ * support resources) of a platform folder, and the class names of that
+ * platform's layoutlib.jar plus the bundled support jars.
+ *
+ * A factory is loaded on first use and kept for the life of the process.
+ * layoutlib itself is not thread-safe, so the APKs rendered against one
+ * platform have to be rendered one after the other.
+ */
+public class RenderServicePool {
+
+	private static org.apache.logging.log4j.Logger log = LogManager.getFormatterLogger(RenderServicePool.class);
+
+	// jars whose classes MyLayoutlibCallBack may instantiate, besides layoutlib.jar
+	public static final String[] SUPPORT_JARS = { "lib/support-v4-22.0.0.jar", "lib/appcompat-v7-22.0.0.jar",
+			"lib/support-annotations-22.0.0.jar" };
+
+	private static final HashMap<String, RenderServiceFactory> factories = new HashMap<>();
+	private static final HashMap<String, Set<String>> classNames = new HashMap<>();
+
+	/**
+	 * @return the factory of the platform, loading it the first time; null if
+	 *         layoutlib failed to initialize (not cached, so a later call
+	 *         retries).
+	 */
+	public static synchronized RenderServiceFactory factoryFor(File platformFolder) throws IOException {
+		String key = platformFolder.getCanonicalPath();
+		RenderServiceFactory factory = factories.get(key);
+		if (factory == null) {
+			long start = System.currentTimeMillis();
+			factory = RenderServiceFactory.create(platformFolder);
+			if (factory == null) {
+				return null;
+			}
+			factories.put(key, factory);
+			log.info("Loaded layoutlib of %s in %d ms", key, System.currentTimeMillis() - start);
+		}
+		return factory;
+	}
+
+	/**
+	 * @return the (read-only) class names of &lt;platform&gt;/data/layoutlib.jar
+	 *         and {@link #SUPPORT_JARS}, scanned once per platform.
+	 */
+	public static synchronized Set<String> classNamesFor(File platformFolder) throws IOException {
+		String key = platformFolder.getCanonicalPath();
+		Set<String> classes = classNames.get(key);
+		if (classes == null) {
+			HashSet<String> all = new HashSet<>();
+			all.addAll(classNamesInJar(new File(platformFolder, "data/layoutlib.jar").getPath()));
+			for (String jar : SUPPORT_JARS) {
+				all.addAll(classNamesInJar(jar));
+			}
+			classes = Collections.unmodifiableSet(all);
+			classNames.put(key, classes);
+		}
+		return classes;
+	}
+
+	public static Set<String> classNamesInJar(String jar) throws IOException {
+		HashSet<String> classnames = new HashSet<>();
+		try (JarInputStream in = new JarInputStream(new FileInputStream(jar))) {
+			JarEntry entry;
+			while ((entry = in.getNextJarEntry()) != null) {
+				if (entry.getName().endsWith(".class")) {
+					String className = entry.getName().replace('/', '.');
+					classnames.add(className.substring(0, className.lastIndexOf('.')));
+				}
+			}
+		}
+		return classnames;
+	}
+}
@@ -0,0 +1,170 @@
+package edu.cwru.android.ui;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Resource ID &lt;-&gt; '&lt;type&gt;/&lt;name&gt;' index of an APK, filled from the
+ * ResPackage specs by APKResourceResolver.
+ *
+ * Entries are kept as (id, type, name) in parallel arrays; two open-addressing
+ * tables (linear probing, power-of-two sizes) map an id and a type/name pair to
+ * the entry. Type and name strings are interned, and the '&lt;type&gt;/&lt;name&gt;'
+ * string of an entry is only built the first time it is asked for. As with the
+ * HashMaps this replaces, a later put() of an existing id or name wins.
+ */
+public class ResIdIndex {
+
+	private int size = 0;
+	private int[] ids = new int[64];
+	private String[] types = new String[64];
+	private String[] names = new String[64];
+	private String[] fullNames = new String[64];
+
+	// slot -> entry + 1, 0 is an empty slot
+	private int[] byId = new int[128];
+	private int[] byName = new int[128];
+
+	private final HashMap<String, String> strings = new HashMap<>();
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void put(int id, String type, String name) {
+		if (size == ids.length) {
+			grow();
+		}
+		int e = size++;
+		ids[e] = id;
+		types[e] = intern(type);
+		names[e] = intern(name);
+		if (2 * size > byId.length) {
+			rehash(byId.length * 2);
+		} else {
+			link(e);
+		}
+	}
+
+	/**
+	 * @return null or the name as '&lt;type&gt;/&lt;name&gt;', e.g. 'layout/main'
+	 */
+	public String nameFor(int id) {
+		int e = entryForId(id);
+		if (e < 0) {
+			return null;
+		}
+		if (fullNames[e] == null) {
+			fullNames[e] = types[e] + "/" + names[e];
+		}
+		return fullNames[e];
+	}
+
+	/**
+	 * @return null or the ID of '&lt;type&gt;/&lt;name&gt;'
+	 */
+	public Integer idFor(String type, String name) {
+		int mask = byName.length - 1;
+		for (int slot = hash(type, name) & mask; byName[slot] != 0; slot = (slot + 1) & mask) {
+			int e = byName[slot] - 1;
+			if (types[e].equals(type) && names[e].equals(name)) {
+				return ids[e];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param fullName
+	 *            '&lt;type&gt;/&lt;name&gt;', e.g. 'id/hello_btn'
+	 * @return null or ID
+	 */
+	public Integer idFor(String fullName) {
+		int slash = fullName.indexOf('/');
+		if (slash < 0) {
+			return null;
+		}
+		int mask = byName.length - 1;
+		for (int slot = mix(fullName.hashCode()) & mask; byName[slot] != 0; slot = (slot + 1) & mask) {
+			int e = byName[slot] - 1;
+			String type = types[e];
+			String name = names[e];
+			if (type.length() == slash && name.length() == fullName.length() - slash - 1
+					&& fullName.startsWith(type) && fullName.startsWith(name, slash + 1)) {
+				return ids[e];
+			}
+		}
+		return null;
+	}
+
+	private int entryForId(int id) {
+		int mask = byId.length - 1;
+		for (int slot = mix(id) & mask; byId[slot] != 0; slot = (slot + 1) & mask) {
+			int e = byId[slot] - 1;
+			if (ids[e] == id) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+	// points the id and name slots at entry e, replacing an older entry with the same key
+	private void link(int e) {
+		int mask = byId.length - 1;
+		int slot = mix(ids[e]) & mask;
+		while (byId[slot] != 0 && ids[byId[slot] - 1] != ids[e]) {
+			slot = (slot + 1) & mask;
+		}
+		byId[slot] = e + 1;
+
+		mask = byName.length - 1;
+		slot = hash(types[e], names[e]) & mask;
+		while (byName[slot] != 0) {
+			int o = byName[slot] - 1;
+			if (types[o].equals(types[e]) && names[o].equals(names[e])) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		byName[slot] = e + 1;
+	}
+
+	private void rehash(int capacity) {
+		byId = new int[capacity];
+		byName = new int[capacity];
+		for (int e = 0; e < size; e++) {
+			link(e);
+		}
+	}
+
+	private void grow() {
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		types = Arrays.copyOf(types, capacity);
+		names = Arrays.copyOf(names, capacity);
+		fullNames = Arrays.copyOf(fullNames, capacity);
+	}
+
+	private String intern(String s) {
+		String shared = strings.putIfAbsent(s, s);
+		return shared == null ? s : shared;
+	}
+
+	// String.hashCode() of type + "/" + name, without building that string
+	private static int hash(String type, String name) {
+		int h = type.hashCode() * 31 + '/';
+		for (int i = 0; i < name.length(); i++) {
+			h = 31 * h + name.charAt(i);
+		}
+		return mix(h);
+	}
+
+	private static int mix(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,84 @@
+package edu.cwru.android.ui;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Builds the resource ID index of a synthetic app (50k resources by default)
+ * the way buildResIdMap() used to, with String.format and two boxed HashMaps,
+ * and with ResIdIndex, then times the lookups a layout pass does (one
+ * resolveNameForId per attribute, some resolveIdForName) and checks both
+ * give the same answers. ResourceDecodingBenchmark times the whole
+ * extraction of real APKs.
+ *
+ * Usage: ResIdIndexBenchmark [resources] [lookups]
+ */
+public class ResIdIndexBenchmark {
+
+	private static final String[] TYPES = { "attr", "drawable", "layout", "anim", "id", "string", "dimen", "color",
+			"style", "styleable" };
+
+	public static void main(String[] args) {
+		int resources = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+
+		int[] ids = new int[resources];
+		String[] types = new String[resources];
+		String[] names = new String[resources];
+		for (int i = 0; i < resources; i++) {
+			int type = i % TYPES.length;
+			types[i] = TYPES[type];
+			ids[i] = 0x7f000000 | ((type + 1) << 16) | (i / TYPES.length);
+			names[i] = "res_" + Integer.toString(i / TYPES.length, 36) + "_" + (i % 7);
+		}
+		Random random = new Random(42);
+		int[] probes = new int[lookups];
+		for (int i = 0; i < lookups; i++) {
+			probes[i] = random.nextInt(resources);
+		}
+
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			HashMap<Integer, String> id2Name = new HashMap<Integer, String>();
+			HashMap<String, Integer> name2Id = new HashMap<String, Integer>();
+			for (int i = 0; i < resources; i++) {
+				String resName = String.format("%s/%s", types[i], names[i]);
+				id2Name.put(ids[i], resName);
+				name2Id.put(resName, ids[i]);
+			}
+			long mapBuild = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			ResIdIndex index = new ResIdIndex();
+			for (int i = 0; i < resources; i++) {
+				index.put(ids[i], types[i], names[i]);
+			}
+			long indexBuild = System.nanoTime() - start;
+
+			long hash = 0;
+			start = System.nanoTime();
+			for (int p : probes) {
+				hash += id2Name.get(ids[p]).length();
+				if ((p & 15) == 0) {
+					hash += name2Id.get(String.format("%s/%s", types[p], names[p]));
+				}
+			}
+			long mapLookup = System.nanoTime() - start;
+
+			long check = 0;
+			start = System.nanoTime();
+			for (int p : probes) {
+				check += index.nameFor(ids[p]).length();
+				if ((p & 15) == 0) {
+					check += index.idFor(types[p], names[p]);
+				}
+			}
+			long indexLookup = System.nanoTime() - start;
+
+			System.out.println(String.format(
+					"round %d: build HashMap %.1f ms / ResIdIndex %.1f ms, lookups HashMap %.1f ms / ResIdIndex %.1f ms%s",
+					round, mapBuild / 1e6, indexBuild / 1e6, mapLookup / 1e6, indexLookup / 1e6,
+					hash == check ? "" : ", RESULTS DIFFER"));
+		}
+	}
+}
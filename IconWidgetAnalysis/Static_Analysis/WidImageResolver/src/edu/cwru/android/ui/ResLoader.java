@@ -26,6 +26,9 @@ public class ResLoader {
 	private ResPackage FrameworkRes = null;
 	private File mFrameworkDirectory = null;
 
+	// decoded once per process and shared by every ResLoader that wants it
+	private static ResPackage sSharedFrameworkRes = null;
+
 	public ResLoader() {
 //		try {
 //			loadFrameworkPkg();
@@ -34,6 +37,33 @@ public class ResLoader {
 //		}
 	}
 
+	/**
+	 * @param withFramework
+	 *            add the framework package (1.apk) to the tables of this
+	 *            loader. It is decoded by the first loader that asks for it
+	 *            and then shared, as it is the same for every APK.
+	 */
+	public ResLoader(boolean withFramework) {
+		if (withFramework) {
+			try {
+				FrameworkRes = sharedFrameworkPkg(this);
+				if (FrameworkRes != null) {
+					FrameworkResID = FrameworkRes.getId();
+				}
+			} catch (AndrolibException e) {
+				log.error(e);
+			}
+		}
+	}
+
+	private static synchronized ResPackage sharedFrameworkPkg(ResLoader loader) throws AndrolibException {
+		if (sSharedFrameworkRes == null) {
+			loader.loadFrameworkPkg();
+			sSharedFrameworkRes = loader.FrameworkRes;
+		}
+		return sSharedFrameworkRes;
+	}
+
 	public boolean isFrameworkLoaded() {
 		return FrameworkRes != null;
 	}
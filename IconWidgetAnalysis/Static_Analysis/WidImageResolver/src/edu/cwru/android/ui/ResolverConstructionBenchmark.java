@@ -0,0 +1,52 @@
+package edu.cwru.android.ui;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Times the construction of APKResourceResolver, which used to parse
+ * appres/R.txt for every APK, against the per-instance parse it replaced, and
+ * checks that SupportRTable answers every lookup of the parsed map.
+ *
+ * Usage: ResolverConstructionBenchmark [iterations]
+ */
+public class ResolverConstructionBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+		Map<String, Map<String, Integer>> name2id = new RResParser().parseNameToId(SupportRTable.DEFAULT_PATH);
+		SupportRTable table = SupportRTable.shared();
+		int mismatches = 0;
+		for (Entry<String, Map<String, Integer>> type : name2id.entrySet()) {
+			for (Entry<String, Integer> e : type.getValue().entrySet()) {
+				if (!e.getValue().equals(table.idFor(type.getKey(), e.getKey()))) {
+					mismatches++;
+				}
+			}
+		}
+		System.out.println(String.format("%d support resources, %d mismatches", table.size(), mismatches));
+
+		// warm up both paths
+		for (int i = 0; i < iterations / 10 + 1; i++) {
+			new RResParser().parseNameToId(SupportRTable.DEFAULT_PATH);
+			new APKResourceResolver("warmup.apk");
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			new RResParser().parseNameToId(SupportRTable.DEFAULT_PATH);
+			new APKResourceResolver("app" + i + ".apk");
+		}
+		long parsing = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			new APKResourceResolver("app" + i + ".apk");
+		}
+		long shared = System.nanoTime() - start;
+
+		System.out.println(String.format("R.txt parsed per resolver: %.3f ms/resolver", parsing / 1e6 / iterations));
+		System.out.println(String.format("shared SupportRTable:      %.3f ms/resolver", shared / 1e6 / iterations));
+	}
+}
@@ -0,0 +1,80 @@
+package edu.cwru.android.ui;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Times APKResourceResolver.extractARSCAndLayoutFiles() on every APK under a
+ * directory, once decoding the XMLs sequentially and once on N threads, and
+ * checks that the layout JSON (as written by WidgetIDIconMappingMain) and the
+ * drawable JSON (output/*.image.json) are identical in both runs.
+ *
+ * Usage: ResourceDecodingBenchmark &lt;apk folder&gt; [threads]
+ */
+public class ResourceDecodingBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Please give a directory for the apks to be analyzed");
+			return;
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		new File("output").mkdirs();
+
+		List<File> apks = new ArrayList<>();
+		Queue<File> queue = new LinkedList<>();
+		Arrays.asList(new File(args[0]).listFiles()).forEach(f -> queue.offer(f));
+		while (!queue.isEmpty()) {
+			File f = queue.poll();
+			if (f.isDirectory()) {
+				Arrays.asList(f.listFiles()).forEach(c -> queue.offer(c));
+			} else if (f.getName().endsWith("apk")) {
+				apks.add(f);
+			}
+		}
+
+		long totalSequential = 0, totalParallel = 0;
+		int mismatches = 0;
+		for (File apk : apks) {
+			String[] sequential = new String[2];
+			String[] parallel = new String[2];
+			long t1 = run(apk, 1, sequential);
+			long t2 = run(apk, threads, parallel);
+			totalSequential += t1;
+			totalParallel += t2;
+			boolean same = sequential[0].equals(parallel[0]) && sequential[1].equals(parallel[1]);
+			if (!same) {
+				mismatches++;
+			}
+			System.out.println(String.format("%s: sequential %d ms, %d threads %d ms%s", apk.getName(), t1, threads,
+					t2, same ? "" : ", OUTPUT DIFFERS"));
+		}
+		System.out.println(String.format("%d APKs: sequential %d ms, %d threads %d ms, %d mismatches", apks.size(),
+				totalSequential, threads, totalParallel, mismatches));
+	}
+
+	// output[0] = layout JSON, output[1] = drawable JSON
+	private static long run(File apk, int threads, String[] output) throws Exception {
+		StringWriter layouts = new StringWriter();
+		PrintWriter out = new PrintWriter(layouts);
+		long start = System.currentTimeMillis();
+		APKResourceResolver resolver = new APKResourceResolver(apk.getAbsolutePath());
+		resolver.setDecodeThreads(threads);
+		resolver.setTagHandler(new ImageResourceTagDetailHandler(out));
+		resolver.extractARSCAndLayoutFiles();
+		long time = System.currentTimeMillis() - start;
+		out.close();
+		output[0] = layouts.toString();
+		File images = new File("output", apk.getName().substring(0, apk.getName().length() - 4) + ".image.json");
+		output[1] = images.exists() ? new String(Files.readAllBytes(Paths.get(images.getPath()))) : "";
+		return time;
+	}
+}
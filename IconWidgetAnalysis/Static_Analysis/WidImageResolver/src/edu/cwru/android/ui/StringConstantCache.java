@@ -0,0 +1,131 @@
+package edu.cwru.android.ui;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+
+import brut.androlib.AndrolibException;
+import brut.androlib.res.data.ResResSpec;
+import brut.androlib.res.data.ResResource;
+import brut.androlib.res.data.ResTable;
+import brut.androlib.res.data.value.ResStringValue;
+import brut.androlib.res.data.value.ResValue;
+
+/**
+ * Per-APK memo of the string constants of resource IDs (language -&gt; value),
+ * shared by APKResourceResolver and its tag handlers. The same styles,
+ * strings and drawables are referenced by thousands of attributes, so each ID
+ * is looked up in the ResTable once. Safe to use from the decoding threads.
+ */
+public class StringConstantCache {
+
+	private static org.apache.logging.log4j.Logger log = LogManager.getFormatterLogger(StringConstantCache.class);
+
+	private static class Constants {
+		final Map<String, String> values;
+		// "en", else the default language, else ""; null if there is no string value
+		final String preferred;
+
+		Constants(Map<String, String> values) {
+			this.values = values;
+			if (values.isEmpty()) {
+				preferred = null;
+			} else {
+				String val = values.get("en");
+				if (null == val)
+					val = values.get(APKResourceResolver.DefaultLanguage);
+				if (null == val)
+					val = "";
+				preferred = val;
+			}
+		}
+	}
+
+	private final ResTable resTable;
+	private final ConcurrentHashMap<Integer, Constants> memo = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public StringConstantCache(ResTable resTable) {
+		this.resTable = resTable;
+	}
+
+	public ResTable getResTable() {
+		return resTable;
+	}
+
+	// Return: Language -> String Value. e.g. "en" -> "Hello"
+	public Map<String, String> possibleStringConstantForId(int resId) {
+		if (resId < 0x7f000000) {
+			return Collections.emptyMap();
+		}
+		return lookup(resId).values;
+	}
+
+	/**
+	 * @return the English value of resId, else the one of the default
+	 *         language, else ""; null if resId has no string value.
+	 */
+	public String preferredStringConstantForId(int resId) {
+		if (resId < 0x7f000000) {
+			return null;
+		}
+		return lookup(resId).preferred;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		long h = getHits(), m = getMisses();
+		return String.format("%d string constant lookups, %d ids resolved, %.1f%% hits", h + m, m,
+				h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+	}
+
+	private Constants lookup(int resId) {
+		Constants constants = memo.get(resId);
+		if (constants != null) {
+			hits.increment();
+			return constants;
+		}
+		misses.increment();
+		return memo.computeIfAbsent(resId, id -> new Constants(resolve(id)));
+	}
+
+	private Map<String, String> resolve(int resId) {
+		Map<String, String> resRet = new TreeMap<String, String>();
+		ResResSpec resSpec;
+		try {
+			resSpec = resTable.getResSpec(resId);
+			log.info("Resource #%08X '%s'<", resId, resSpec.getFullName(true, false));
+			Set<ResResource> resSet = resSpec.listResources();
+			log.info("@: (%d configurations)", resSet.size());
+			for (ResResource res : resSet) {
+				ResValue resVal = res.getValue();
+				if (!(resVal instanceof ResStringValue))
+					continue;
+				char[] lang = res.getConfig().getFlags().language;
+				String language;
+				if ('\0' != lang[0])
+					language = new String(lang);
+				else
+					language = APKResourceResolver.DefaultLanguage;
+				resRet.put(language, resVal.toString());
+			}
+		} catch (AndrolibException e) {
+			log.error(e);
+		}
+		return Collections.unmodifiableMap(resRet);
+	}
+}
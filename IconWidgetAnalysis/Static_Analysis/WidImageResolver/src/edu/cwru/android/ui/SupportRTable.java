@@ -0,0 +1,86 @@
+package edu.cwru.android.ui;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable copy of the support library table in appres/R.txt (type -> name
+ * -> id). It is the same for every APK, so one instance is built lazily and
+ * shared by all APKResourceResolver instances of the process.
+ *
+ * Names of a type are kept sorted with their ids in a parallel int[],
+ * instead of a map of boxed Integers per type.
+ */
+public final class SupportRTable {
+
+	public static final String DEFAULT_PATH = "appres/R.txt";
+
+	private static volatile SupportRTable shared = null;
+
+	private final HashMap<String, String[]> names = new HashMap<>();
+	private final HashMap<String, int[]> ids = new HashMap<>();
+	private final int size;
+
+	/**
+	 * The table of appres/R.txt, loaded on first use. If the file cannot be
+	 * read, the table is empty.
+	 */
+	public static SupportRTable shared() {
+		SupportRTable table = shared;
+		if (table == null) {
+			synchronized (SupportRTable.class) {
+				if (shared == null) {
+					Map<String, Map<String, Integer>> name2id = null;
+					try {
+						name2id = new RResParser().parseNameToId(DEFAULT_PATH);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					shared = new SupportRTable(name2id);
+				}
+				table = shared;
+			}
+		}
+		return table;
+	}
+
+	public SupportRTable(Map<String, Map<String, Integer>> name2id) {
+		int total = 0;
+		if (name2id != null) {
+			for (Entry<String, Map<String, Integer>> type : name2id.entrySet()) {
+				String[] typeNames = type.getValue().keySet().toArray(new String[0]);
+				Arrays.sort(typeNames);
+				int[] typeIds = new int[typeNames.length];
+				for (int i = 0; i < typeNames.length; i++) {
+					typeIds[i] = type.getValue().get(typeNames[i]);
+				}
+				names.put(type.getKey(), typeNames);
+				ids.put(type.getKey(), typeIds);
+				total += typeNames.length;
+			}
+		}
+		size = total;
+	}
+
+	/**
+	 * @param type
+	 *            e.g. 'id', 'layout', 'drawable'.
+	 * @param name
+	 *            e.g. 'abc_fade_in'
+	 * @return null or ID
+	 */
+	public Integer idFor(String type, String name) {
+		String[] typeNames = names.get(type);
+		if (typeNames == null) {
+			return null;
+		}
+		int i = Arrays.binarySearch(typeNames, name);
+		return i < 0 ? null : ids.get(type)[i];
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -2,7 +2,6 @@ package edu.cwru.android.ui;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.HashMap;
 
 import brut.androlib.res.data.ResTable;
 import brut.androlib.res.decoder.AXmlResourceParser;
@@ -12,15 +11,29 @@ public abstract class TagXmlHandler {
 	public abstract ResLayout handleOneTag(String xmlFile, AXmlResourceParser parser, ResLayout parent);
 
 	ResTable resTable;
-	HashMap<Integer, String> id2Name;
+	StringConstantCache stringConstants;
+	ResIdIndex id2Name;
 	protected PrintWriter out;
 
-	public void setId2Name(HashMap<Integer, String> map) {
+	public void setId2Name(ResIdIndex map) {
 		this.id2Name = map;
 	}
 
 	public void setResTable(ResTable t) {
 		resTable = t;
+		if (stringConstants == null || stringConstants.getResTable() != t) {
+			stringConstants = new StringConstantCache(t);
+		}
+	}
+
+	/**
+	 * Share the string constant memo of the APKResourceResolver, so both
+	 * resolve each resource ID once.
+	 */
+	public void setStringConstants(StringConstantCache cache) {
+		if (cache != null) {
+			stringConstants = cache;
+		}
 	}
 
 	public void setPrinter(PrintWriter out) {
@@ -40,4 +53,26 @@ public abstract class TagXmlHandler {
 		// TODO Auto-generated method stub
 		
 	}
+
+	/**
+	 * Whether forkForXml() is supported. Handlers that cannot be split see all
+	 * XMLs of an app on one thread.
+	 */
+	public boolean supportsFork() {
+		return false;
+	}
+
+	/**
+	 * Return a new handler for a single layout XML, to be run on a decoding
+	 * thread. APKResourceResolver hands it back to join() in the order the
+	 * XMLs would have been handled sequentially. Only called if
+	 * supportsFork() returns true.
+	 */
+	public TagXmlHandler forkForXml() {
+		return null;
+	}
+
+	public void join(TagXmlHandler part) {
+
+	}
 }
@@ -0,0 +1,263 @@
+package edu.cwru.android.ui;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.DefaultDirectedGraph;
+import org.jgrapht.graph.DefaultEdge;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+
+import android.view.View;
+
+/**
+ * The view hierarchy of a rendered layout, as parallel arrays indexed by
+ * node. Nodes are numbered in pre-order as UIElement.nodeid used to be (node
+ * i has nodeid i + 1), so the subtree of i is [i, subtreeEnd(i)) and its
+ * children are found by skipping from one child's subtree end to the next.
+ * If the layout has several top-level views (e.g. &lt;merge&gt;), node 0 is an
+ * artificial root with empty bounds.
+ *
+ * Bounds are stored absolute: a view's left/top/right/bottom in ViewInfo are
+ * relative to its parent, and the parent always comes first, so they are
+ * offset while the tree is read. Class names are interned across trees.
+ */
+public class ViewTree {
+
+	private static final ConcurrentHashMap<String, String> classNames = new ConcurrentHashMap<>();
+
+	private int size = 0;
+	private int[] parent;
+	private int[] subtreeEnd;
+	// left, top, right, bottom per node
+	private int[] bounds;
+	// paddings, same order
+	private int[] padding;
+	private int[] ids;
+	private int[] inputTypes;
+	private int[] visibility;
+	private int[] sizes; // width, height per node
+	private String[] className;
+	private String[] text;
+	private View[] views;
+
+	private ViewTree(int capacity) {
+		parent = new int[capacity];
+		subtreeEnd = new int[capacity];
+		bounds = new int[4 * capacity];
+		padding = new int[4 * capacity];
+		ids = new int[capacity];
+		inputTypes = new int[capacity];
+		visibility = new int[capacity];
+		sizes = new int[2 * capacity];
+		className = new String[capacity];
+		text = new String[capacity];
+		views = new View[capacity];
+	}
+
+	public static ViewTree build(List<ViewInfo> topLevels) {
+		ViewTree tree = new ViewTree(64);
+		int root = -1;
+		if (topLevels.size() > 1) {
+			root = tree.add(-1);
+		}
+		tree.addAll(root, topLevels);
+		if (root >= 0) {
+			tree.subtreeEnd[root] = tree.size;
+		}
+		return tree;
+	}
+
+	private void addAll(int parentNode, List<ViewInfo> infos) {
+		for (ViewInfo info : infos) {
+			int node = add(parentNode);
+			int px = parentNode < 0 ? 0 : bounds[4 * parentNode];
+			int py = parentNode < 0 ? 0 : bounds[4 * parentNode + 1];
+			bounds[4 * node] = info.getLeft() + px;
+			bounds[4 * node + 1] = info.getTop() + py;
+			bounds[4 * node + 2] = info.getRight() + px;
+			bounds[4 * node + 3] = info.getBottom() + py;
+			if (info.getClassName() != null) {
+				className[node] = classNames.computeIfAbsent(info.getClassName(), name -> name);
+			}
+			View view = (View) info.getViewObject();
+			views[node] = view;
+			ids[node] = view.getId();
+			padding[4 * node] = view.getPaddingLeft();
+			padding[4 * node + 1] = view.getPaddingTop();
+			padding[4 * node + 2] = view.getPaddingRight();
+			padding[4 * node + 3] = view.getPaddingBottom();
+			visibility[node] = view.getVisibility();
+			sizes[2 * node] = view.getWidth();
+			sizes[2 * node + 1] = view.getHeight();
+			if (view instanceof android.widget.TextView) {
+				text[node] = textOf((android.widget.TextView) view);
+			}
+			if (view instanceof android.widget.EditText) {
+				inputTypes[node] = ((android.widget.EditText) view).getInputType();
+			}
+			List<ViewInfo> children = info.getChildren();
+			if (children != null) {
+				addAll(node, children);
+			}
+			subtreeEnd[node] = size;
+		}
+	}
+
+	// "TEXT; HINT" if both are not empty, else the one that is not, else null
+	private static String textOf(android.widget.TextView view) {
+		CharSequence text = view.getText();
+		CharSequence hint = view.getHint();
+		String textEx = text == null ? "" : text.toString().trim();
+		String hintEx = hint == null ? "" : hint.toString().trim();
+		if (!textEx.isEmpty() && !hintEx.isEmpty()) {
+			return String.format("%s; %s", textEx, hintEx);
+		} else if (!textEx.isEmpty()) {
+			return textEx;
+		} else if (!hintEx.isEmpty()) {
+			return hintEx;
+		}
+		return null;
+	}
+
+	private int add(int parentNode) {
+		if (size == parent.length) {
+			grow();
+		}
+		parent[size] = parentNode;
+		subtreeEnd[size] = size + 1;
+		return size++;
+	}
+
+	private void grow() {
+		int capacity = parent.length * 2;
+		parent = Arrays.copyOf(parent, capacity);
+		subtreeEnd = Arrays.copyOf(subtreeEnd, capacity);
+		bounds = Arrays.copyOf(bounds, 4 * capacity);
+		padding = Arrays.copyOf(padding, 4 * capacity);
+		ids = Arrays.copyOf(ids, capacity);
+		inputTypes = Arrays.copyOf(inputTypes, capacity);
+		visibility = Arrays.copyOf(visibility, capacity);
+		sizes = Arrays.copyOf(sizes, 2 * capacity);
+		className = Arrays.copyOf(className, capacity);
+		text = Arrays.copyOf(text, capacity);
+		views = Arrays.copyOf(views, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the parent node, -1 for a root
+	 */
+	public int parent(int node) {
+		return parent[node];
+	}
+
+	/**
+	 * @return the end (exclusive) of the subtree of node; its first child,
+	 *         if any, is node + 1
+	 */
+	public int subtreeEnd(int node) {
+		return subtreeEnd[node];
+	}
+
+	public int left(int node) {
+		return bounds[4 * node];
+	}
+
+	public int top(int node) {
+		return bounds[4 * node + 1];
+	}
+
+	public int right(int node) {
+		return bounds[4 * node + 2];
+	}
+
+	public int bottom(int node) {
+		return bounds[4 * node + 3];
+	}
+
+	public int paddingLeft(int node) {
+		return padding[4 * node];
+	}
+
+	public int paddingTop(int node) {
+		return padding[4 * node + 1];
+	}
+
+	public int paddingRight(int node) {
+		return padding[4 * node + 2];
+	}
+
+	public int paddingBottom(int node) {
+		return padding[4 * node + 3];
+	}
+
+	public int id(int node) {
+		return ids[node];
+	}
+
+	public int inputType(int node) {
+		return inputTypes[node];
+	}
+
+	public int visibility(int node) {
+		return visibility[node];
+	}
+
+	public String className(int node) {
+		return className[node];
+	}
+
+	public String text(int node) {
+		return text[node];
+	}
+
+	/**
+	 * @return the View object of the node, null for the artificial root
+	 */
+	public View view(int node) {
+		return views[node];
+	}
+
+	/**
+	 * The tree as the JGraphT graph buildUiHierarchy() used to build, with
+	 * bounds relative to the parent, for the DOT export.
+	 */
+	public DirectedGraph<UIElement, DefaultEdge> toGraph() {
+		DirectedGraph<UIElement, DefaultEdge> graph = new DefaultDirectedGraph<UIElement, DefaultEdge>(
+				DefaultEdge.class);
+		UIElement[] elements = new UIElement[size];
+		for (int i = 0; i < size; i++) {
+			UIElement element = new UIElement();
+			element.nodeid = i + 1;
+			int p = parent[i];
+			element.left = left(i) - (p < 0 ? 0 : left(p));
+			element.top = top(i) - (p < 0 ? 0 : top(p));
+			element.right = right(i) - (p < 0 ? 0 : left(p));
+			element.bottom = bottom(i) - (p < 0 ? 0 : top(p));
+			element.paddingLeft = paddingLeft(i);
+			element.paddingTop = paddingTop(i);
+			element.paddingRight = paddingRight(i);
+			element.paddingBottom = paddingBottom(i);
+			element.id = ids[i];
+			element.inputType = inputTypes[i];
+			element.visibility = visibility[i];
+			element.width = sizes[2 * i];
+			element.height = sizes[2 * i + 1];
+			element.className = className[i];
+			element.text = text[i];
+			element.view = views[i];
+			elements[i] = element;
+			graph.addVertex(element);
+			if (p >= 0) {
+				graph.addEdge(elements[p], element);
+			}
+		}
+		return graph;
+	}
+}
@@ -2,53 +2,36 @@ package edu.cwru.android.ui;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
+import java.util.List;
 import java.util.Queue;
-import java.util.TreeMap;
 
 public class WidgetIDIconMappingMain {
 
-	public static void main(String[] args) {
+	// one "apk\tstatus\tmillis" line per analyzed APK, appended to output/
+	public static final String LEDGER_NAME = "widgetid.ledger";
+	public static final int DEFAULT_TIMEOUT_MINUTES = 10;
 
-		if (args.length != 1) {
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 1) {
 			System.out.println("Please give a directory for the apks to be analyzed");
 			return;
 		}
-
-		class ValueComparator implements Comparator<String> {
-			Map<String, Integer> base;
-
-			public ValueComparator(Map<String, Integer> base) {
-				this.base = base;
-			}
-
-			// Note: this comparator imposes orderings that are inconsistent
-			// with
-			// equals.
-			public int compare(String a, String b) {
-				if (base.get(a) >= base.get(b)) {
-					return -1;
-				} else {
-					return 1;
-				} // returning 0 would merge keys
-			}
-		}
+		// optional: number of APKs in flight, per-APK timeout in minutes
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long timeout = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TIMEOUT_MINUTES;
 
 		String folder = args[0];
 		File dir = new File(folder);
-		Map<String, Integer> stats = new HashMap<>();
-		Map<String, Integer> results = new TreeMap<String, Integer>(new ValueComparator(stats));
 		Queue<File> queue = new LinkedList<>();
 		File[] files = dir.listFiles();
 		Arrays.asList(files).forEach(f -> queue.offer(f));
-		HashSet<String> failedfiles = new HashSet<>();
-		int count = 0;
-		String[] tags = new String[] {};
+		List<File> apks = new ArrayList<>();
 
 		while (!queue.isEmpty()) {
 			File apkfile = queue.poll();
@@ -59,36 +42,65 @@ public class WidgetIDIconMappingMain {
 			if (!apkfile.getName().endsWith("apk")) {
 				continue;
 			}
+			apks.add(apkfile);
+		}
 
-			try {
-				PrintWriter out = new PrintWriter("output/" + apkfile.getName().substring(0, apkfile.getName().length()-4)+".json");
+		new File("output").mkdirs();
+		int count = analyzeAll(apks, threads, timeout);
+		System.out.println("Successfully process " + count + " files");
 
-				String filename = apkfile.getAbsolutePath();
-				System.out.println("Analyzing " + filename);
+	}
 
-				try {
-					APKResourceResolver resolver = new APKResourceResolver(filename);
-					ImageResourceTagDetailHandler handler = new ImageResourceTagDetailHandler(out);
-					for (String tag : tags) {
-						handler.addTagsToInspect(tag);
-					}
-					resolver.setTagHandler(handler);
-					resolver.extractARSCAndLayoutFiles();
+	static File outputFor(File apkfile) {
+		return new File("output/" + apkfile.getName().substring(0, apkfile.getName().length() - 4) + ".json");
+	}
 
-					System.out.println("Done analyzing " + filename);
-					count++;
-				} catch (Exception e) {
-					failedfiles.add(filename);
+	/*
+	 * Analyzes the APKs with at most "threads" of them in flight and returns the number that succeeded. APKs
+	 * whose output JSON is newer than the APK are skipped. An APK still running after "timeout" minutes is
+	 * interrupted (see ApkBatch); the resolver checks for interrupts per ZIP entry and XML tag, so its worker
+	 * is free again shortly after. The JSON is streamed to a ".part" file that only replaces the output once
+	 * the APK completed, so a timed-out or failed APK leaves no partial output and is retried by the next run.
+	 */
+	public static int analyzeAll(List<File> apks, int threads, long timeout) throws Exception {
+		List<String> pending = new ArrayList<>();
+		for (File apkfile : apks) {
+			File json = outputFor(apkfile);
+			if (!json.exists() || json.lastModified() < apkfile.lastModified()) {
+				pending.add(apkfile.getAbsolutePath());
+			}
+		}
+		System.out.println("Skipping " + (apks.size() - pending.size()) + " up-to-date APKs, " + pending.size()
+				+ " left to analyze with " + threads + " threads.");
+
+		ApkBatch batch = new ApkBatch("output/" + LEDGER_NAME, threads, timeout);
+		return batch.run(pending, filename -> {
+			File json = outputFor(new File(filename));
+			File part = new File(json.getPath() + ".part");
+			System.out.println("Analyzing " + filename);
+			boolean moved = false;
+			PrintWriter out = new PrintWriter(part);
+			try {
+				APKResourceResolver resolver = new APKResourceResolver(filename);
+				ImageResourceTagDetailHandler handler = new ImageResourceTagDetailHandler(out, true);
+				resolver.setTagHandler(handler);
+				resolver.extractARSCAndLayoutFiles();
+				out.close();
+				if (!resolver.isExtracted() || out.checkError()) {
+					// the resolver logged why; the .part file is incomplete
+					return "failed";
 				}
-
+				Files.move(part.toPath(), json.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				moved = true;
+			} finally {
 				out.close();
-			} catch (Exception e) {
-				e.printStackTrace();
+				if (!moved) {
+					part.delete();
+				}
 			}
-		}
-
-		System.out.println("Successfully process " + count + " files");
-
+			System.out.println("Done analyzing " + filename);
+			return "ok";
+		});
 	}
 
 }
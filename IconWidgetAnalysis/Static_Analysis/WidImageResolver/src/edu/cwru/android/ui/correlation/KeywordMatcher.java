@@ -0,0 +1,247 @@
+package edu.cwru.android.ui.correlation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first category, in the given priority order, whose pattern occurs
+ * in a string, i.e. the same answer as trying each pattern's find() in turn,
+ * but in one scan of the string.
+ *
+ * The characters each pattern can begin with are worked out from the pattern
+ * text once, into a table char -&gt; categories (a bit mask), with a second
+ * table for the characters that follow a leading \b and so can only start a
+ * match at a word start. The scan looks each character up and tries only the
+ * patterns that can start there, in priority order, with lookingAt(). Once a
+ * category is found, the rest of the string is only searched for
+ * higher-priority ones.
+ *
+ * The start analysis understands literals, groups, '|', '?', '*', '+', \s
+ * and \b. If a pattern uses anything else or may match the empty string, it
+ * is tried at every position.
+ */
+public class KeywordMatcher {
+
+	private static final String WHITESPACE = " \t\n\u000B\f\r";
+
+	private final String[] categories;
+	private final Pattern[] patterns;
+	// char -> categories that can start with it, anywhere / only after a \b
+	private final HashMap<Character, Integer> starts = new HashMap<>();
+	private final HashMap<Character, Integer> wordStarts = new HashMap<>();
+	// categories tried at every position
+	private int anyStart = 0;
+
+	public KeywordMatcher(String[] categories, Pattern[] patterns) {
+		if (categories.length != patterns.length || patterns.length > 31) {
+			throw new IllegalArgumentException("one pattern per category, at most 31");
+		}
+		this.categories = categories.clone();
+		this.patterns = patterns.clone();
+		for (int k = 0; k < patterns.length; k++) {
+			try {
+				if (new StartAnalysis(patterns[k].pattern(), 1 << k).collect()) {
+					anyStart |= 1 << k;
+				}
+			} catch (IllegalArgumentException e) {
+				anyStart |= 1 << k;
+			}
+		}
+	}
+
+	/**
+	 * @param str
+	 *            already lowercased if the patterns expect it
+	 * @return the first category whose pattern occurs in str, null if none
+	 */
+	public String match(String str) {
+		int best = categories.length;
+		Matcher[] matchers = new Matcher[patterns.length];
+		for (int p = 0; p < str.length() && best > 0; p++) {
+			int candidates = candidatesAt(str, p) & ((1 << best) - 1);
+			for (int k = 0; candidates != 0; k++, candidates >>>= 1) {
+				if ((candidates & 1) == 0) {
+					continue;
+				}
+				if (matchers[k] == null) {
+					matchers[k] = patterns[k].matcher(str);
+					matchers[k].useTransparentBounds(true);
+				}
+				matchers[k].region(p, str.length());
+				if (matchers[k].lookingAt()) {
+					best = k;
+					break;
+				}
+			}
+		}
+		return best < categories.length ? categories[best] : null;
+	}
+
+	// the categories whose pattern may match at p
+	private int candidatesAt(String str, int p) {
+		char c = str.charAt(p);
+		Integer anywhere = starts.get(c);
+		Integer afterBoundary = wordStarts.get(c);
+		int candidates = anyStart | (anywhere == null ? 0 : anywhere);
+		// a \b before a word character needs a non-word character before it;
+		// ASCII word characters are word characters for every \b definition
+		if (afterBoundary != null && (!isAsciiWord(c) || p == 0 || !isAsciiWord(str.charAt(p - 1)))) {
+			candidates |= afterBoundary;
+		}
+		return candidates;
+	}
+
+	private static boolean isAsciiWord(char c) {
+		return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	/**
+	 * Collects the characters a pattern can start with into starts and
+	 * wordStarts, by a recursive descent over the supported syntax.
+	 */
+	private class StartAnalysis {
+		private final String regex;
+		private final int category;
+		private int pos = 0;
+
+		StartAnalysis(String regex, int category) {
+			this.regex = regex;
+			this.category = category;
+		}
+
+		/**
+		 * @return true if the pattern may match the empty string
+		 */
+		boolean collect() {
+			List<Object> alternation = parseAlternation();
+			if (pos != regex.length()) {
+				throw new IllegalArgumentException("unbalanced ')' in " + regex);
+			}
+			return firsts(alternation, false);
+		}
+
+		// Parse tree: an alternation is a List of sequences, a sequence a List of
+		// atoms, an atom a Character, a String (a set: \s), BOUNDARY, or a
+		// Quantified.
+		private final Object BOUNDARY = new Object();
+
+		private List<Object> parseAlternation() {
+			List<Object> alternation = new ArrayList<>();
+			alternation.add(parseSequence());
+			while (pos < regex.length() && regex.charAt(pos) == '|') {
+				pos++;
+				alternation.add(parseSequence());
+			}
+			return alternation;
+		}
+
+		private List<Object> parseSequence() {
+			List<Object> sequence = new ArrayList<>();
+			while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+				Object atom = parseAtom();
+				if (pos < regex.length() && "?*+".indexOf(regex.charAt(pos)) >= 0) {
+					atom = new Quantified(atom, regex.charAt(pos) != '+');
+					pos++;
+				}
+				sequence.add(atom);
+			}
+			return sequence;
+		}
+
+		private Object parseAtom() {
+			char c = regex.charAt(pos++);
+			switch (c) {
+			case '(':
+				if (pos < regex.length() && regex.charAt(pos) == '?') {
+					throw new IllegalArgumentException("unsupported group in " + regex);
+				}
+				List<Object> group = parseAlternation();
+				if (pos >= regex.length() || regex.charAt(pos) != ')') {
+					throw new IllegalArgumentException("unbalanced '(' in " + regex);
+				}
+				pos++;
+				return group;
+			case '\\':
+				char e = regex.charAt(pos++);
+				if (e == 's') {
+					return WHITESPACE;
+				} else if (e == 'b') {
+					return BOUNDARY;
+				} else if (!Character.isLetterOrDigit(e)) {
+					return e;
+				}
+				throw new IllegalArgumentException("unsupported escape \\" + e + " in " + regex);
+			case '[':
+			case '{':
+			case '.':
+			case '^':
+			case '$':
+			case '?':
+			case '*':
+			case '+':
+				throw new IllegalArgumentException("unsupported '" + c + "' in " + regex);
+			default:
+				return c;
+			}
+		}
+
+		// adds the first characters of an alternation, returns whether it is nullable
+		@SuppressWarnings("unchecked")
+		private boolean firsts(List<Object> alternation, boolean afterBoundary) {
+			boolean nullable = false;
+			for (Object sequence : alternation) {
+				boolean boundary = afterBoundary;
+				boolean sequenceNullable = true;
+				for (Object atom : (List<Object>) sequence) {
+					if (atom == BOUNDARY) {
+						boundary = true;
+						continue;
+					}
+					if (!firstsOfAtom(atom, boundary)) {
+						sequenceNullable = false;
+						break;
+					}
+				}
+				nullable |= sequenceNullable;
+			}
+			return nullable;
+		}
+
+		@SuppressWarnings("unchecked")
+		private boolean firstsOfAtom(Object atom, boolean boundary) {
+			if (atom instanceof Quantified) {
+				boolean nullable = firstsOfAtom(((Quantified) atom).atom, boundary);
+				return nullable || ((Quantified) atom).optional;
+			} else if (atom instanceof List) {
+				return firsts((List<Object>) atom, boundary);
+			} else if (atom instanceof String) {
+				for (char c : ((String) atom).toCharArray()) {
+					add(c, boundary);
+				}
+				return false;
+			} else {
+				add((Character) atom, boundary);
+				return false;
+			}
+		}
+
+		private void add(char c, boolean boundary) {
+			HashMap<Character, Integer> table = boundary ? wordStarts : starts;
+			Integer mask = table.get(c);
+			table.put(c, (mask == null ? 0 : mask) | category);
+		}
+	}
+
+	private static class Quantified {
+		final Object atom;
+		final boolean optional;
+
+		Quantified(Object atom, boolean optional) {
+			this.atom = atom;
+			this.optional = optional;
+		}
+	}
+}
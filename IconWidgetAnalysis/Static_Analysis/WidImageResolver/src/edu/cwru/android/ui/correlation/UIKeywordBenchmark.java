@@ -0,0 +1,103 @@
+package edu.cwru.android.ui.correlation;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares UIKeywordFactory.sensitive() with the pattern-by-pattern search it
+ * replaced, on UI texts in English, Chinese and Korean: checks that both give
+ * the same category for every text, then times them.
+ *
+ * The corpus is built from the labels below, glued together with random
+ * separators so keywords also show up inside words and next to CJK text. A
+ * file of texts, one per line, can be given instead.
+ *
+ * Usage: UIKeywordBenchmark [texts.txt] [rounds]
+ */
+public class UIKeywordBenchmark {
+
+	private static final String[] LABELS = { "Password", "Enter your password", "PIN code", "Confirm passcode",
+			"Username", "User name or e-mail", "Nickname", "E-mail address", "Phone number", "Mobile no",
+			"Your phone #", "Contact name", "Fax", "Card number", "Credit card", "CVV2 code", "Security code",
+			"Card verification value", "SSN", "Last 4 digits of SSN", "Social security number", "National ID",
+			"Security answer", "Enter your answer", "Activation code", "First name", "Last Name", "Date of birth",
+			"Birthday", "Gender", "Age", "Weight", "Height", "Blood type", "Calories (kcal)", "Doctor",
+			"Payment amount", "Monthly payment", "Expiration date", "Billing address", "PayPal", "Login",
+			"Sign in", "Sign up", "Log in to continue", "Register", "Check in", "Search", "Send", "OK", "Cancel",
+			"Settings", "Message", "Type a message...", "Comment", "Title", "Description", "Notes", "Quantity",
+			"Address line 2", "City", "Zip", "Website", "Hello world", "passwords123", "usernames", "agency",
+			"heightened", "pinned", "signal", "paging", "密码", "密 码", "密碼", "用户名", "邮箱", "电子邮箱", "手机号码",
+			"手機號碼", "登录", "登 入", "银行卡卡号", "身份证号码", "身分證字號", "搜索", "发送", "请输入内容", "备注", "비밀번호",
+			"아이디", "이메일", "검색", "메시지 입력", "이름", "주소" };
+
+	private static final String[] GLUE = { " ", "", ": ", "/", "-", "　", "_", "#", "\n", "。", " 및 " };
+
+	public static void main(String[] args) throws Exception {
+		List<String> texts = new ArrayList<>();
+		int rounds = 10;
+		if (args.length > 0 && !args[0].matches("\\d+")) {
+			texts.addAll(Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8));
+			if (args.length > 1) {
+				rounds = Integer.parseInt(args[1]);
+			}
+		} else {
+			if (args.length > 0) {
+				rounds = Integer.parseInt(args[0]);
+			}
+			Random random = new Random(7);
+			for (String label : LABELS) {
+				texts.add(label);
+			}
+			for (int i = 0; i < 20000; i++) {
+				StringBuilder text = new StringBuilder();
+				int words = 1 + random.nextInt(4);
+				for (int w = 0; w < words; w++) {
+					if (w > 0) {
+						text.append(GLUE[random.nextInt(GLUE.length)]);
+					}
+					text.append(LABELS[random.nextInt(LABELS.length)]);
+				}
+				texts.add(text.toString());
+			}
+		}
+
+		int mismatches = 0, sensitive = 0;
+		for (String text : texts) {
+			String expected = UIKeywordFactory.sensitiveSequential(text);
+			String actual = UIKeywordFactory.sensitive(text);
+			if (expected == null ? actual != null : !expected.equals(actual)) {
+				if (mismatches++ < 10) {
+					System.out.println(String.format("MISMATCH '%s': %s vs %s", text, expected, actual));
+				}
+			}
+			if (expected != null) {
+				sensitive++;
+			}
+		}
+		System.out.println(String.format("%d texts, %d sensitive, %d mismatches", texts.size(), sensitive,
+				mismatches));
+
+		for (int round = 0; round < rounds; round++) {
+			long hash = 0;
+			long start = System.nanoTime();
+			for (String text : texts) {
+				String tag = UIKeywordFactory.sensitiveSequential(text);
+				hash += tag == null ? 0 : tag.length();
+			}
+			long sequential = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (String text : texts) {
+				String tag = UIKeywordFactory.sensitive(text);
+				hash -= tag == null ? 0 : tag.length();
+			}
+			long single = System.nanoTime() - start;
+			System.out.println(String.format("round %d: pattern by pattern %.1f ms, single pass %.1f ms (%.1fx)%s",
+					round, sequential / 1e6, single / 1e6, (double) sequential / single,
+					hash == 0 ? "" : ", RESULTS DIFFER"));
+		}
+	}
+}
@@ -52,8 +52,23 @@ public class UIKeywordFactory {
 			.compile("\\b(weight|height|health|cholesterol|glucose|obese|calories|kcal|doctor|blood(\\stype)?)\\b");
 	private final static Pattern patternFinancialInfo = Pattern
 			.compile("\\b(repayment|(payment(s)?|deposit|loan)(\\samount)?|income|expir(y|ation)(\\sdate)?|paypal|banking|debit|mortgage|taxable|(down|monthly)\\spayment|payment\\s(information|details)|cardholder's\\sname|billing\\saddress|opening\\sbalance|financial\\sinstitution)\\b");
-	
+
+	// same order as sensitiveSequential(), the first category found wins
+	private final static KeywordMatcher matcher = new KeywordMatcher(
+			new String[] { Credential, SSN, Protection, CreditCard, FinancialInfo, Contact, Health, Identity,
+					PersonalInfo, Account },
+			new Pattern[] { patternCredential, patternSSN, patternProtection, patternCreditCard, patternFinancialInfo,
+					patternContact, patternHealth, patternIdentity, patternPersonalInfo, patternAccount });
+
+	/**
+	 * @return the sensitive category of a UI text, null if none
+	 */
 	public static String sensitive(String str) {
+		return matcher.match(str.toLowerCase());
+	}
+
+	// the pattern-by-pattern search sensitive() replaces, kept for UIKeywordBenchmark
+	static String sensitiveSequential(String str) {
 		String lowercaseStr = str.toLowerCase();
 		//System.out.println(lowercaseStr);
 		Matcher matcher = patternCredential.matcher(lowercaseStr);
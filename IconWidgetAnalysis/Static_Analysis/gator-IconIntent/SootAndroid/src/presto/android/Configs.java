@@ -110,6 +110,14 @@ public class Configs {
 
   public static boolean sanityCheck = false;
 
+  // [gui analysis] re-evaluate every op node in every round of the fixed-point
+  // propagation, and recompute all path summaries when a listener is set
+  public static boolean fullFixpoint = false;
+
+  // [gui analysis] answer flow graph reachability queries on the strongly
+  // connected components of the frozen flow graph
+  public static boolean sccReachability = false;
+
   // [test generation] test cases generation strategy
   public static TestGenStrategy testGenStrategy = null;
 
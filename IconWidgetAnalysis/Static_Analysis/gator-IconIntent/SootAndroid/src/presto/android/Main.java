@@ -80,6 +80,10 @@ public class Main {
       } else if ("-worker".equals(s)) {
         Configs.workerNum = Integer.parseInt(args[++i]);
         Assert.assertTrue("[Error]: number of workers should be >= 1", Configs.workerNum > 0);
+      } else if ("-fullFixpoint".equals(s)) {
+        Configs.fullFixpoint = true;
+      } else if ("-sccReachability".equals(s)) {
+        Configs.sccReachability = true;
       } else if ("-mockScene".equals(s)) {
         Configs.mockScene = true;
       } else if ("-hardwareEvent".equals(s)) {
@@ -9,15 +9,12 @@
 package presto.android.gui;
 
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 
 import presto.android.Hierarchy;
-import presto.android.gui.FixpointSolver.VarExtractor;
 import presto.android.gui.graph.NIdNode;
 import presto.android.gui.graph.NNode;
 import presto.android.gui.graph.NObjectNode;
-import presto.android.gui.graph.NOpNode;
 import presto.android.gui.graph.NVarNode;
 import presto.android.gui.listener.ListenerSpecification;
 import soot.IntType;
@@ -59,7 +56,12 @@ public class DemandVariableValueQuery implements VariableValueQueryInterface {
     if (varNode == null) {
       return Collections.emptySet();
     }
-    Set<NObjectNode> pts = Sets.newHashSet();
+    ValueSetCache cache = ValueSetCache.v(solver);
+    Set<NObjectNode> pts = cache.refTypeValues(varNode);
+    if (pts != null) {
+      return pts;
+    }
+    pts = Sets.newHashSet();
 
     // basic reachability
     Set<NVarNode> locals = Sets.newHashSet(varNode);
@@ -71,23 +73,9 @@ public class DemandVariableValueQuery implements VariableValueQueryInterface {
       }
     }
     // fixpoint results
-    extractFixpointSolution(solver.resultExtractor, pts, locals);
-
-    return pts;
-  }
+    cache.addResults(locals, pts);
 
-  void extractFixpointSolution(VarExtractor extractor,
-      Set<NObjectNode> resultSet, Set<NVarNode> locals) {
-    Map<NOpNode, Set<NNode>> solutionMap = solver.solutionResults;
-    for (Map.Entry<NOpNode, Set<NNode>> entry : solutionMap.entrySet()) {
-      NOpNode opNode = entry.getKey();
-      NVarNode local = extractor.extract(opNode);
-      if (locals.contains(local)) {
-        for (NNode resultNode : entry.getValue()) {
-          resultSet.add((NObjectNode) resultNode);
-        }
-      }
-    }
+    return cache.putRefTypeValues(varNode, pts);
   }
 
   @Override
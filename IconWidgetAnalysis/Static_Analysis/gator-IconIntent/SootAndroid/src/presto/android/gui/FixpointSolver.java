@@ -8,6 +8,7 @@
  */
 package presto.android.gui;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -15,6 +16,7 @@ import java.util.Map;
 import java.util.Set;
 
 import presto.android.*;
+import presto.android.gui.graph.AdjacencyIndex;
 import presto.android.gui.graph.NActivityNode;
 import presto.android.gui.graph.NAddView1OpNode;
 import presto.android.gui.graph.NAddView2OpNode;
@@ -131,6 +133,10 @@ public class FixpointSolver {
 		preSolveInit();
 
 		solveCore();
+
+		// SetListener flow has added edges
+		AdjacencyIndex.freeze(flowgraph.allNNodes);
+		ValueSetCache.invalidate();
 	}
 
 	// TODO: move this to field decl section. There is no point doing it here
@@ -183,6 +189,38 @@ public class FixpointSolver {
 		solutionListenersReachability();
 	}
 
+	/**
+	 * Brings the path summaries up to date after flow edges were added from the
+	 * given nodes, with the same result as
+	 * computePathsFromViewProducerToViewConsumer(). All summaries only grow, and
+	 * a producer's reachable nodes can only have changed if it reaches one of
+	 * the nodes, so only those producers are walked again, and only the op
+	 * nodes they reach are summarized again.
+	 */
+	void updatePathsFromViewProducerToViewConsumer(Set<NNode> changedNodes) {
+		Set<NNode> sources = Sets.newHashSet();
+		for (NNode n : changedNodes) {
+			graphUtil.findBackwardReachableNodes(n, sources);
+		}
+		Set<NOpNode> targets = Sets.newHashSet();
+		for (NNode n : sources) {
+			pathsFromViewProducer(n, targets);
+		}
+		pathUpdateSources += sources.size();
+
+		// reverse
+		reverseReachbility(reachingParameterViews, reachedParameterViews, targets);
+		reverseReachbility(reachingReceiverViews, reachedReceiverViews, targets);
+		reverseReachbility(reachingListeners, reachedListeners, targets);
+
+		// solution
+		for (NOpNode target : targets) {
+			solutionParameterReachability(target, reachingParameterViews.get(target));
+			solutionReceiverReachability(target, reachingReceiverViews.get(target));
+			solutionListenersReachability(target, reachingListeners.get(target));
+		}
+	}
+
 	public void solveCore() {
 		// compute
 		layoutIdReachability();
@@ -205,27 +243,33 @@ public class FixpointSolver {
 	// AddView1, AddView2
 	void solutionParameterReachability() {
 		for (Map.Entry<NOpNode, Set<NNode>> entry : reachingParameterViews.entrySet()) {
-			NOpNode key = entry.getKey();
-			Set<NNode> value = solutionParameters.get(key);
-			for (NNode n : entry.getValue()) {
-				if (!(n instanceof NObjectNode)) {
-					continue;
-				}
-				if (!isValidFlowByType(n, key, VarType.Parameter)) {
-					continue;
+			solutionParameterReachability(entry.getKey(), entry.getValue());
+		}
+	}
+
+	void solutionParameterReachability(NOpNode key, Set<NNode> reachingViews) {
+		if (reachingViews == null) {
+			return;
+		}
+		Set<NNode> value = solutionParameters.get(key);
+		for (NNode n : reachingViews) {
+			if (!(n instanceof NObjectNode)) {
+				continue;
+			}
+			if (!isValidFlowByType(n, key, VarType.Parameter)) {
+				continue;
+			}
+			if (n instanceof NViewAllocNode || n instanceof NInflNode) {
+				if (value == null) {
+					value = Sets.newHashSet();
+					solutionParameters.put(key, value);
 				}
-				if (n instanceof NViewAllocNode || n instanceof NInflNode) {
-					if (value == null) {
-						value = Sets.newHashSet();
-						solutionParameters.put(key, value);
-					}
-					value.add(n);
+				value.add(n);
+			} else {
+				if (Configs.sanityCheck) {
+					throw new RuntimeException("Unhandled reaching parameter at " + key + " for " + n);
 				} else {
-					if (Configs.sanityCheck) {
-						throw new RuntimeException("Unhandled reaching parameter at " + key + " for " + n);
-					} else {
-						Logger.verb("WARNING", "Unhandled reaching parameter at " + key + " for " + n);
-					}
+					Logger.verb("WARNING", "Unhandled reaching parameter at " + key + " for " + n);
 				}
 			}
 		}
@@ -234,33 +278,39 @@ public class FixpointSolver {
 	// AddView2, SetId, SetText, FindView1, FindView3
 	void solutionReceiverReachability() {
 		for (Map.Entry<NOpNode, Set<NNode>> entry : reachingReceiverViews.entrySet()) {
-			NOpNode key = entry.getKey();
-			Set<NNode> value = solutionReceivers.get(key);
-			for (NNode n : entry.getValue()) {
-				if (!(n instanceof NObjectNode)) {
-					continue;
+			solutionReceiverReachability(entry.getKey(), entry.getValue());
+		}
+	}
+
+	void solutionReceiverReachability(NOpNode key, Set<NNode> reachingViews) {
+		if (reachingViews == null) {
+			return;
+		}
+		Set<NNode> value = solutionReceivers.get(key);
+		for (NNode n : reachingViews) {
+			if (!(n instanceof NObjectNode)) {
+				continue;
+			}
+			if (!isValidFlowByType(n, key, VarType.Receiver)) {
+				continue;
+			}
+			if (n instanceof NViewAllocNode || n instanceof NOptionsMenuNode || n instanceof NContextMenuNode) {
+				if (value == null) {
+					value = Sets.newHashSet();
+					solutionReceivers.put(key, value);
 				}
-				if (!isValidFlowByType(n, key, VarType.Receiver)) {
-					continue;
+				value.add(n);
+			} else if (n instanceof NInflNode) {
+				if (value == null) {
+					value = Sets.newHashSet();
+					solutionReceivers.put(key, value);
 				}
-				if (n instanceof NViewAllocNode || n instanceof NOptionsMenuNode || n instanceof NContextMenuNode) {
-					if (value == null) {
-						value = Sets.newHashSet();
-						solutionReceivers.put(key, value);
-					}
-					value.add(n);
-				} else if (n instanceof NInflNode) {
-					if (value == null) {
-						value = Sets.newHashSet();
-						solutionReceivers.put(key, value);
-					}
-					value.add(n);
+				value.add(n);
+			} else {
+				if (Configs.sanityCheck) {
+					throw new RuntimeException("Unhandled reaching receiver at " + key + " for " + n);
 				} else {
-					if (Configs.sanityCheck) {
-						throw new RuntimeException("Unhandled reaching receiver at " + key + " for " + n);
-					} else {
-						Logger.verb("WARNING", "Unhandled reaching receiver at " + key + " for " + n);
-					}
+					Logger.verb("WARNING", "Unhandled reaching receiver at " + key + " for " + n);
 				}
 			}
 		}
@@ -291,40 +341,54 @@ public class FixpointSolver {
 	void solutionListenersReachability() {
 		// SetListener
 		for (Map.Entry<NOpNode, Set<NNode>> entry : reachingListeners.entrySet()) {
-			NOpNode setListener = entry.getKey();
-			Set<NNode> reachables = entry.getValue();
-			for (NNode n : reachables) {
-				if (!(n instanceof NObjectNode)) {
-					continue;
-				}
-				NObjectNode listenerObject = (NObjectNode) n;
+			solutionListenersReachability(entry.getKey(), entry.getValue());
+		}
+	}
 
-				// Sanity check. If fail, exception.
-				if (graphUtil.reachableNodes(listenerObject).contains(setListener.getParameter())) {
-					if (!listenerSpecs.isListenerType(listenerObject.getClassType())) {
-						String msg = "[WARNING] Non-listener " + listenerObject + " reaching " + setListener;
-						Debug.v().printf("%s\n", msg);
-						if (Configs.verbose) {
-							System.out.println(msg);
-						}
-						continue;
+	void solutionListenersReachability(NOpNode setListener, Set<NNode> reachables) {
+		if (reachables == null) {
+			return;
+		}
+		for (NNode n : reachables) {
+			if (!(n instanceof NObjectNode)) {
+				continue;
+			}
+			NObjectNode listenerObject = (NObjectNode) n;
+
+			// Sanity check. If fail, exception.
+			if (graphUtil.reaches(listenerObject, setListener.getParameter())) {
+				if (!listenerSpecs.isListenerType(listenerObject.getClassType())) {
+					String msg = "[WARNING] Non-listener " + listenerObject + " reaching " + setListener;
+					Debug.v().printf("%s\n", msg);
+					if (Configs.verbose) {
+						System.out.println(msg);
 					}
-					MultiMapUtil.addKeyAndHashSetElement(solutionListeners, setListener, n);
+					continue;
+				}
+				MultiMapUtil.addKeyAndHashSetElement(solutionListeners, setListener, n);
+			} else {
+				if (Configs.sanityCheck) {
+					throw new RuntimeException("Unhandled reaching listeners at " + setListener + " for " + n);
 				} else {
-					if (Configs.sanityCheck) {
-						throw new RuntimeException("Unhandled reaching listeners at " + setListener + " for " + n);
-					} else {
-						Logger.verb("WARNING", "Unhandled reaching listeners at " + setListener + " for " + n);
-					}
+					Logger.verb("WARNING", "Unhandled reaching listeners at " + setListener + " for " + n);
 				}
 			}
 		}
 	}
 
 	void reverseReachbility(Map<NOpNode, Set<NNode>> map, Map<NOpNode, Set<NOpNode>> reverseMap) {
-		for (Map.Entry<NOpNode, Set<NNode>> entry : map.entrySet()) {
-			NOpNode target = entry.getKey();
-			for (NNode n : entry.getValue()) {
+		reverseReachbility(map, reverseMap, map.keySet());
+	}
+
+	// Only for the given targets
+	void reverseReachbility(Map<NOpNode, Set<NNode>> map, Map<NOpNode, Set<NOpNode>> reverseMap,
+			Set<NOpNode> targets) {
+		for (NOpNode target : targets) {
+			Set<NNode> sources = map.get(target);
+			if (sources == null) {
+				continue;
+			}
+			for (NNode n : sources) {
 				if (!(n instanceof NOpNode)) {
 					continue;
 				}
@@ -559,20 +623,7 @@ public class FixpointSolver {
 	void viewAndListenerAsParameterAndReceiverReachability() {
 		// Find all nodes that can "produce" view objects
 		for (NNode n : flowgraph.allNNodes) {
-			if (n instanceof NViewAllocNode || n instanceof NInflNode || n instanceof NOptionsMenuNode
-					|| n instanceof NContextMenuNode) {
-				parameterAndReceiverViewReachability(n);
-			} else if (n instanceof NOpNode) {
-				NOpNode opNode = (NOpNode) n;
-				if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView2OpNode
-						|| opNode instanceof NFindView3OpNode || opNode instanceof NInflate1OpNode) {
-					parameterAndReceiverViewReachability(n);
-				}
-			}
-			// Any object could be a listener
-			if (n instanceof NObjectNode) {
-				listenerReachability(n);
-			}
+			pathsFromViewProducer(n, null);
 		}
 		// patch in some special cases
 		// OptionsMenu as receiver
@@ -581,6 +632,38 @@ public class FixpointSolver {
 		propagateContextMenuToReceivers();
 	}
 
+	// Records the paths from n if it produces views or is an object. The
+	// NOpNodes reached are added to targets, if not null.
+	void pathsFromViewProducer(NNode n, Set<NOpNode> targets) {
+		Set<NNode> reachables = null;
+		if (n instanceof NViewAllocNode || n instanceof NInflNode || n instanceof NOptionsMenuNode
+				|| n instanceof NContextMenuNode) {
+			reachables = graphUtil.reachableNodes(n);
+			parameterAndReceiverViewReachability(n, reachables);
+		} else if (n instanceof NOpNode) {
+			NOpNode opNode = (NOpNode) n;
+			if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView2OpNode
+					|| opNode instanceof NFindView3OpNode || opNode instanceof NInflate1OpNode) {
+				reachables = graphUtil.reachableNodes(n);
+				parameterAndReceiverViewReachability(n, reachables);
+			}
+		}
+		// Any object could be a listener
+		if (n instanceof NObjectNode) {
+			if (reachables == null) {
+				reachables = graphUtil.reachableNodes(n);
+			}
+			listenerReachability(n, reachables);
+		}
+		if (targets != null && reachables != null) {
+			for (NNode target : reachables) {
+				if (target instanceof NOpNode) {
+					targets.add((NOpNode) target);
+				}
+			}
+		}
+	}
+
 	void propagateOptionsMenuToReceivers() {
 		for (Map.Entry<NOpNode, Set<NOptionsMenuNode>> entry : reachingOptionsMenus.entrySet()) {
 			NOpNode key = entry.getKey();
@@ -607,8 +690,7 @@ public class FixpointSolver {
 		}
 	}
 
-	void parameterAndReceiverViewReachability(NNode source) {
-		Set<NNode> reachables = graphUtil.reachableNodes(source);
+	void parameterAndReceiverViewReachability(NNode source, Set<NNode> reachables) {
 		for (NNode target : reachables) {
 			if (!(target instanceof NOpNode)) {
 				continue;
@@ -633,8 +715,7 @@ public class FixpointSolver {
 		}
 	}
 
-	void listenerReachability(NNode source) {
-		Set<NNode> reachables = graphUtil.reachableNodes(source);
+	void listenerReachability(NNode source, Set<NNode> reachables) {
 		for (NNode target : reachables) {
 			if (!(target instanceof NOpNode)) {
 				continue;
@@ -1055,64 +1136,138 @@ public class FixpointSolver {
 		return rootNode;
 	}
 
+	// ==== propagation
+	// An op node is evaluated again only if something it reads has changed
+	// since its last evaluation: the sizes of its solution sets, which only
+	// grow, and versions of the view hierarchy, the view ids and the flow
+	// graph, which are bumped whenever AddView1/2, SetId or SetListener change
+	// them. Otherwise the evaluation would find everything it adds already
+	// there. The rounds and their order are kept, as results depend on them
+	// (e.g. the first SetId to reach a view sets its id).
+	Map<NOpNode, int[]> evaluationStamps = Maps.newHashMap();
+	int hierarchyVersion = 0;
+	int viewIdVersion = 0;
+	int flowgraphVersion = 0;
+
+	// Objects that got new flow edges from SetListener, for the path update
+	Set<NNode> listenerFlowChanges = Sets.newHashSet();
+
+	// Statistics
+	int propagationRounds = 0;
+	int evaluatedOpNodes = 0;
+	int skippedOpNodes = 0;
+	int pathUpdates = 0;
+	int pathUpdateSources = 0;
+
+	boolean needsEvaluation(NOpNode node) {
+		if (Configs.fullFixpoint) {
+			evaluatedOpNodes++;
+			return true;
+		}
+		int[] stamp = evaluationStamp(node);
+		int[] last = evaluationStamps.get(node);
+		if (last != null && Arrays.equals(last, stamp)) {
+			skippedOpNodes++;
+			return false;
+		}
+		evaluationStamps.put(node, stamp);
+		evaluatedOpNodes++;
+		return true;
+	}
+
+	int[] evaluationStamp(NOpNode node) {
+		int hierarchy = 0, viewIds = 0, flow = 0;
+		if (node instanceof NFindView1OpNode || node instanceof NFindView2OpNode) {
+			hierarchy = hierarchyVersion;
+			viewIds = viewIdVersion;
+		} else if (node instanceof NFindView3OpNode) {
+			hierarchy = hierarchyVersion;
+		} else if (node instanceof NSetTextOpNode || node instanceof NSetImageResourceOpNode) {
+			flow = flowgraphVersion;
+		}
+		return new int[] { sizeOf(solutionReceivers.get(node)), sizeOf(solutionParameters.get(node)),
+				sizeOf(solutionListeners.get(node)), hierarchy, viewIds, flow };
+	}
+
+	static int sizeOf(Set<NNode> set) {
+		return set == null ? 0 : set.size();
+	}
+
 	// Now, we are done with inflation. Let's process other NOpNodes
 	void viewAndListenerPropagation() {
 		while (true) {
+			propagationRounds++;
 			boolean changed = false;
 			for (NOpNode findView1 : NOpNode.getNodes(NFindView1OpNode.class)) {
-				if (processFindView1((NFindView1OpNode) findView1)) {
+				if (needsEvaluation(findView1) && processFindView1((NFindView1OpNode) findView1)) {
 					changed = true;
 				}
 			}
 			for (NOpNode findView2 : NOpNode.getNodes(NFindView2OpNode.class)) {
-				if (processFindView2((NFindView2OpNode) findView2)) {
+				if (needsEvaluation(findView2) && processFindView2((NFindView2OpNode) findView2)) {
 					changed = true;
 				}
 			}
 			for (NOpNode findView3 : NOpNode.getNodes(NFindView3OpNode.class)) {
-				if (processFindView3((NFindView3OpNode) findView3)) {
+				if (needsEvaluation(findView3) && processFindView3((NFindView3OpNode) findView3)) {
 					changed = true;
 				}
 			}
 			for (NOpNode addView1 : NOpNode.getNodes(NAddView1OpNode.class)) {
-				if (processAddView1((NAddView1OpNode) addView1)) {
+				if (needsEvaluation(addView1) && processAddView1((NAddView1OpNode) addView1)) {
 					changed = true;
+					hierarchyVersion++;
 				}
 			}
 			for (NOpNode addView2 : NOpNode.getNodes(NAddView2OpNode.class)) {
-				if (processAddView2((NAddView2OpNode) addView2)) {
+				if (needsEvaluation(addView2) && processAddView2((NAddView2OpNode) addView2)) {
 					changed = true;
+					hierarchyVersion++;
 				}
 			}
 			for (NOpNode setId : NOpNode.getNodes(NSetIdOpNode.class)) {
-				if (processSetId((NSetIdOpNode) setId)) {
+				if (needsEvaluation(setId) && processSetId((NSetIdOpNode) setId)) {
 					changed = true;
+					viewIdVersion++;
 				}
 			}
 			for (NOpNode setText : NOpNode.getNodes(NSetTextOpNode.class)) {
-				if (processSetText((NSetTextOpNode) setText)) {
+				if (needsEvaluation(setText) && processSetText((NSetTextOpNode) setText)) {
 					changed = true;
 				}
 			}
 
 			for (NOpNode setImageResource : NOpNode.getNodes(NSetImageResourceOpNode.class)) {
-				if (processSetImageResource((NSetImageResourceOpNode) setImageResource)) {
+				if (needsEvaluation(setImageResource)
+						&& processSetImageResource((NSetImageResourceOpNode) setImageResource)) {
 					changed = true;
 				}
 			}
 
-			// SetListener: need to recompute path summary if anything changes
+			// SetListener: need to update the path summary if anything changes
 			for (NOpNode setListener : NOpNode.getNodes(NSetListenerOpNode.class)) {
-				if (processSetListener((NSetListenerOpNode) setListener)) {
+				if (needsEvaluation(setListener) && processSetListener((NSetListenerOpNode) setListener)) {
 					changed = true;
-					// recompute the paths
-					computePathsFromViewProducerToViewConsumer();
+					flowgraphVersion++;
+					pathUpdates++;
+					if (Configs.fullFixpoint) {
+						computePathsFromViewProducerToViewConsumer();
+					} else {
+						updatePathsFromViewProducerToViewConsumer(listenerFlowChanges);
+					}
+					listenerFlowChanges.clear();
 				}
 			}
 			if (!changed) {
 				break;
 			}
 		}
+		if (Configs.verbose) {
+			Logger.verb("FixpointSolver", "Propagation: " + propagationRounds + " rounds, " + evaluatedOpNodes
+					+ " op node evaluations, " + skippedOpNodes + " skipped as nothing they read changed, "
+					+ pathUpdates + " path summary updates"
+					+ (Configs.fullFixpoint ? "" : " from " + pathUpdateSources + " producers"));
+		}
 	}
 
 	// FindView1: lhs = receiver.findViewById(id)
@@ -1461,6 +1616,8 @@ public class FixpointSolver {
 				NObjectNode listenerObject = (NObjectNode) listener;
 				if (flowgraph.processSetListenerOpNode(node, viewObject, listenerObject)) {
 					changed = true;
+					listenerFlowChanges.add(viewObject);
+					listenerFlowChanges.add(listenerObject);
 				}
 			}
 		}
@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.Set;
 
 import presto.android.*;
+import presto.android.gui.graph.AdjacencyIndex;
 import presto.android.gui.graph.NActivityNode;
 import presto.android.gui.graph.NAddView1OpNode;
 import presto.android.gui.graph.NAddView2OpNode;
@@ -530,6 +531,12 @@ public class Flowgraph implements MethodNames {
 		processTabHostRelatedCalls();
 
 		processFlowFromSetListenerToEventHandlers();
+
+		// Later phases mostly read the graph
+		AdjacencyIndex index = AdjacencyIndex.freeze(allNNodes);
+		if (Configs.verbose) {
+			System.out.println("[Flowgraph] " + index);
+		}
 	}
 
 	public boolean processFlowFromSetListenerToEventHandlers() {
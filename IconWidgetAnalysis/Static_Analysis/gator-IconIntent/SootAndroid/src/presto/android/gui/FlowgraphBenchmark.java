@@ -0,0 +1,210 @@
+/*
+ * FlowgraphBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2014, 2015 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import presto.android.gui.graph.AdjacencyIndex;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.graph.NOpNode;
+import presto.android.gui.graph.NVarNode;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Compares the memory and reachability throughput of the flow graph edge
+ * lists in NNode with the frozen AdjacencyIndex and the Reachability engine
+ * over it (with and without SCC condensation), on a random graph shaped
+ * like a large app's: mostly short assignment chains, plus a few nodes (like
+ * NAnyValueNode.ANY or popular fields) with thousands of edges.
+ *
+ * Usage: FlowgraphBenchmark [nodes] [queries]
+ */
+public class FlowgraphBenchmark {
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    Random random = new Random(7);
+
+    long baseline = usedMemory();
+    List<NNode> nodes = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      nodes.add(new NVarNode());
+    }
+    long withNodes = usedMemory();
+    int hubs = Math.max(1, size / 10000);
+    long start = System.nanoTime();
+    for (int i = 0; i < size; i++) {
+      NNode n = nodes.get(i);
+      // 0.9 successors on average, so that reachable sets stay finite
+      int degree = random.nextInt(10) < 3 ? 0 : 1 + (random.nextInt(10) < 2 ? 1 : 0);
+      for (int k = 0; k < degree; k++) {
+        n.addEdgeTo(nodes.get(random.nextInt(size)));
+      }
+      if (random.nextInt(100) < 3) {
+        n.addEdgeTo(nodes.get(random.nextInt(hubs)));
+      }
+      if (random.nextInt(10000) < 5) {
+        nodes.get(random.nextInt(hubs)).addEdgeTo(n);
+      }
+    }
+    long build = System.nanoTime() - start;
+    long withEdges = usedMemory();
+
+    start = System.nanoTime();
+    AdjacencyIndex index = AdjacencyIndex.freeze(nodes);
+    long freeze = System.nanoTime() - start;
+    System.out.println(String.format("%d nodes, %d edges, built in %.1f ms, frozen in %.1f ms", size,
+        index.numberOfEdges(), build / 1e6, freeze / 1e6));
+    System.out.println(String.format("memory: nodes %d KB, edge lists %d KB, adjacency index %d KB",
+        (withNodes - baseline) / 1024, (withEdges - withNodes) / 1024, index.sizeInBytes() / 1024));
+
+    int[] starts = new int[queries];
+    for (int q = 0; q < queries; q++) {
+      starts[q] = random.nextInt(size);
+    }
+    start = System.nanoTime();
+    Reachability bitset = new Reachability(index, false);
+    long bitsetSetup = System.nanoTime() - start;
+    start = System.nanoTime();
+    Reachability condensed = new Reachability(index, true);
+    long sccSetup = System.nanoTime() - start;
+    System.out.println(String.format("engine setup: bitset %.1f ms, scc condensation %.1f ms", bitsetSetup / 1e6,
+        sccSetup / 1e6));
+    for (int round = 0; round < 5; round++) {
+      long copied = 0, indexed = 0, marked = 0, merged = 0;
+      start = System.nanoTime();
+      for (int q : starts) {
+        copied += copyingReachableNodes(nodes.get(q)) + copyingBackwardReachableNodes(nodes.get(q));
+      }
+      long copying = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int q : starts) {
+        indexed += indexedReachableNodes(index, nodes.get(q));
+      }
+      long zeroCopy = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int q : starts) {
+        marked += query(bitset, nodes.get(q));
+      }
+      long bits = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int q : starts) {
+        merged += query(condensed, nodes.get(q));
+      }
+      long scc = System.nanoTime() - start;
+      System.out.println(String.format(
+          "round %d: %d forward + backward queries, copied lists %.1f ms, adjacency index %.1f ms, "
+              + "bitset %.1f ms, scc %.1f ms%s", round, queries, copying / 1e6, zeroCopy / 1e6, bits / 1e6,
+          scc / 1e6, copied == indexed && copied == marked && copied == merged ? "" : ", RESULTS DIFFER"));
+    }
+  }
+
+  static int query(Reachability engine, NNode start) {
+    Set<NNode> forward = Sets.newHashSet();
+    engine.forward(start, forward);
+    Set<NNode> backward = Sets.newHashSet();
+    engine.backward(start, backward);
+    return forward.size() + backward.size();
+  }
+
+  // GraphUtil with the AdjacencyIndex, before Reachability
+  static int indexedReachableNodes(AdjacencyIndex index, NNode start) {
+    Set<NNode> forward = Sets.newHashSet();
+    LinkedList<NNode> worklist = Lists.newLinkedList();
+    worklist.add(start);
+    forward.add(start);
+    while (!worklist.isEmpty()) {
+      NNode n = worklist.remove();
+      for (NNode s : index.successors(n)) {
+        if (forward.add(s) && !(s instanceof NOpNode)) {
+          worklist.add(s);
+        }
+      }
+    }
+    Set<NNode> backward = Sets.newHashSet();
+    worklist.add(start);
+    backward.add(start);
+    while (!worklist.isEmpty()) {
+      NNode n = worklist.remove();
+      for (NNode s : index.predecessors(n)) {
+        if (backward.contains(s)) {
+          continue;
+        }
+        if (s instanceof NOpNode) {
+          if (!(start instanceof NOpNode)) {
+            backward.add(s);
+          }
+        } else {
+          worklist.add(s);
+          backward.add(s);
+        }
+      }
+    }
+    return forward.size() + backward.size();
+  }
+
+  // GraphUtil.findReachableNodes() as it was, copying each successor list
+  static int copyingReachableNodes(NNode start) {
+    Set<NNode> reachableNodes = Sets.newHashSet();
+    LinkedList<NNode> worklist = Lists.newLinkedList();
+    worklist.add(start);
+    reachableNodes.add(start);
+    while (!worklist.isEmpty()) {
+      NNode n = worklist.remove();
+      for (NNode s : n.getSuccessors()) {
+        if (reachableNodes.contains(s)) {
+          continue;
+        }
+        if (!(s instanceof NOpNode)) {
+          worklist.add(s);
+        }
+        reachableNodes.add(s);
+      }
+    }
+    return reachableNodes.size();
+  }
+
+  // GraphUtil.findBackwardReachableNodes() as it was
+  static int copyingBackwardReachableNodes(NNode start) {
+    Set<NNode> reachableNodes = Sets.newHashSet();
+    LinkedList<NNode> worklist = Lists.newLinkedList();
+    worklist.add(start);
+    reachableNodes.add(start);
+    while (!worklist.isEmpty()) {
+      NNode n = worklist.remove();
+      for (NNode s : n.getPredecessors()) {
+        if (reachableNodes.contains(s)) {
+          continue;
+        }
+        if (s instanceof NOpNode) {
+          if (!(start instanceof NOpNode)) {
+            reachableNodes.add(s);
+          }
+        } else {
+          worklist.add(s);
+          reachableNodes.add(s);
+        }
+      }
+    }
+    return reachableNodes.size();
+  }
+
+  static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Set;
 
+import presto.android.gui.graph.AdjacencyIndex;
 import presto.android.gui.graph.NNode;
 import presto.android.gui.graph.NOpNode;
 import soot.toolkits.scalar.Pair;
@@ -38,12 +39,18 @@ public class GraphUtil {
   }
 
   public void findReachableNodes(NNode start, Set<NNode> reachableNodes) {
+    // the successor/predecessor lists without copying, if the graph is frozen
+    AdjacencyIndex index = AdjacencyIndex.current();
+    if (index != null && reachableNodes.isEmpty() && !verbose) {
+      Reachability.of(index).forward(start, reachableNodes);
+      return;
+    }
     LinkedList<NNode> worklist = Lists.newLinkedList();
     worklist.add(start);
     reachableNodes.add(start);
     while (!worklist.isEmpty()) {
       NNode n = worklist.remove();
-      for (NNode s : n.getSuccessors()) {
+      for (NNode s : index == null ? n.getSuccessors() : index.successors(n)) {
         if (reachableNodes.contains(s)) {
           continue;
         }
@@ -58,6 +65,18 @@ public class GraphUtil {
     }
   }
 
+  /**
+   * @return whether target is in reachableNodes(start), stopping as soon as
+   *         it is found
+   */
+  public boolean reaches(NNode start, NNode target) {
+    AdjacencyIndex index = AdjacencyIndex.current();
+    if (index != null) {
+      return Reachability.of(index).reaches(start, target);
+    }
+    return reachableNodes(start).contains(target);
+  }
+
   // ///
   public Set<NNode> backwardReachableNodes(NNode n) {
     // p("[BackwardReachable] " + n);
@@ -67,12 +86,18 @@ public class GraphUtil {
   }
 
   public void findBackwardReachableNodes(NNode start, Set<NNode> reachableNodes) {
+    // the successor/predecessor lists without copying, if the graph is frozen
+    AdjacencyIndex index = AdjacencyIndex.current();
+    if (index != null && reachableNodes.isEmpty() && !verbose) {
+      Reachability.of(index).backward(start, reachableNodes);
+      return;
+    }
     LinkedList<NNode> worklist = Lists.newLinkedList();
     worklist.add(start);
     reachableNodes.add(start);
     while (!worklist.isEmpty()) {
       NNode n = worklist.remove();
-      for (NNode s : n.getPredecessors()) {
+      for (NNode s : index == null ? n.getPredecessors() : index.predecessors(n)) {
         if (reachableNodes.contains(s)) {
           continue;
         }
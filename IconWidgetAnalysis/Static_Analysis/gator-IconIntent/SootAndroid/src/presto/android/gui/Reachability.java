@@ -0,0 +1,455 @@
+/*
+ * Reachability.java - part of the GATOR project
+ *
+ * Copyright (c) 2014, 2015 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import presto.android.Configs;
+import presto.android.gui.graph.AdjacencyIndex;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.graph.NOpNode;
+
+/**
+ * The forward and backward reachability of GraphUtil over a frozen
+ * AdjacencyIndex: node ids are marked in a bit set and queued in an int
+ * array, both kept per thread and reused by the next query, so a query only
+ * allocates the result set.
+ *
+ * As in GraphUtil, NOpNodes are reached but not walked through, except for
+ * the start node going forward; going backward, they are only reached from a
+ * start that is not an NOpNode.
+ *
+ * With Configs.sccReachability, the strongly connected components of the
+ * graph without NOpNodes are computed when the engine is created, and queries
+ * walk the condensed graph: each component is entered once, and the NOpNodes
+ * next to it are kept in a list of their own.
+ */
+public class Reachability {
+  private static volatile Reachability cached;
+
+  private final AdjacencyIndex index;
+  // NOpNode ids
+  private final long[] opNodes;
+  private final Condensation condensation;
+
+  private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+    @Override
+    protected Buffers initialValue() {
+      return new Buffers();
+    }
+  };
+
+  // the benchmark builds engines of both kinds
+  Reachability(AdjacencyIndex index, boolean condense) {
+    this.index = index;
+    this.opNodes = new long[words(index.size())];
+    for (int id = 0; id < index.size(); id++) {
+      if (index.node(id) instanceof NOpNode) {
+        set(opNodes, id);
+      }
+    }
+    this.condensation = condense ? new Condensation() : null;
+  }
+
+  /**
+   * @return the engine for index, created on first use
+   */
+  public static Reachability of(AdjacencyIndex index) {
+    Reachability engine = cached;
+    if (engine == null || engine.index != index) {
+      engine = new Reachability(index, Configs.sccReachability);
+      cached = engine;
+    }
+    return engine;
+  }
+
+  /**
+   * Adds start and the nodes reachable from it to result.
+   */
+  public void forward(NNode start, Set<NNode> result) {
+    if (condensation != null) {
+      condensation.query(start, true, result);
+    } else {
+      walk(start, true, result);
+    }
+  }
+
+  /**
+   * Adds start and the nodes it is reachable from to result.
+   */
+  public void backward(NNode start, Set<NNode> result) {
+    if (condensation != null) {
+      condensation.query(start, false, result);
+    } else {
+      walk(start, false, result);
+    }
+  }
+
+  /**
+   * @return whether target is reachable from start, stopping as soon as it
+   *         is found
+   */
+  public boolean reaches(NNode start, NNode target) {
+    if (start == target) {
+      return true;
+    }
+    if (start.id >= index.size() || target.id >= index.size()) {
+      return false;
+    }
+    Buffers b = buffers.get().of(index.size());
+    int count = 0;
+    b.queue[count++] = start.id;
+    set(b.marks, start.id);
+    boolean found = false;
+    for (int i = 0; i < count && !found; i++) {
+      int n = b.queue[i];
+      if (i > 0 && get(opNodes, n)) {
+        continue;
+      }
+      for (int k = index.successorStart(n), end = index.successorEnd(n); k < end; k++) {
+        int s = index.successor(k);
+        if (s == target.id) {
+          found = true;
+          break;
+        }
+        if (!get(b.marks, s)) {
+          set(b.marks, s);
+          b.queue = push(b.queue, count++, s);
+        }
+      }
+    }
+    b.clear(count);
+    return found;
+  }
+
+  // The walk of GraphUtil: queue[0 .. count) are the nodes reached, in
+  // order, and the ones that are not NOpNodes (or the start) are expanded.
+  private void walk(NNode start, boolean forward, Set<NNode> result) {
+    if (start.id >= index.size()) {
+      // not in the graph when it was frozen, and without edges since
+      result.add(start);
+      return;
+    }
+    Buffers b = buffers.get().of(index.size());
+    boolean startIsOp = start instanceof NOpNode;
+    int count = 0;
+    b.queue[count++] = start.id;
+    set(b.marks, start.id);
+    for (int i = 0; i < count; i++) {
+      int n = b.queue[i];
+      if (i > 0 && get(opNodes, n)) {
+        continue;
+      }
+      int k = forward ? index.successorStart(n) : index.predecessorStart(n);
+      int end = forward ? index.successorEnd(n) : index.predecessorEnd(n);
+      for (; k < end; k++) {
+        int s = forward ? index.successor(k) : index.predecessor(k);
+        if (get(b.marks, s)) {
+          continue;
+        }
+        if (!forward && startIsOp && get(opNodes, s)) {
+          continue;
+        }
+        set(b.marks, s);
+        b.queue = push(b.queue, count++, s);
+      }
+    }
+    result.add(start);
+    for (int i = 1; i < count; i++) {
+      result.add(index.node(b.queue[i]));
+    }
+    b.clear(count);
+  }
+
+  /**
+   * Strongly connected components of the edges between nodes that are not
+   * NOpNodes, with the condensed edges and, per component, the NOpNodes
+   * right after (forward) or before (backward) it.
+   */
+  private class Condensation {
+    // id -> component, -1 for NOpNodes and unused ids
+    final int[] component;
+    int components = 0;
+    // component -> member ids
+    int[] memberStart, members;
+    // component -> successor/predecessor components
+    int[] succStart, succ, predStart, pred;
+    // component -> NOpNode successors/predecessors of its members
+    int[] opSuccStart, opSucc, opPredStart, opPred;
+
+    Condensation() {
+      int size = index.size();
+      component = new int[size];
+      Arrays.fill(component, -1);
+      tarjan(size);
+
+      int[] counts = new int[components + 1];
+      for (int id = 0; id < size; id++) {
+        if (component[id] >= 0) {
+          counts[component[id] + 1]++;
+        }
+      }
+      memberStart = prefixSums(counts);
+      members = new int[memberStart[components]];
+      int[] fill = Arrays.copyOf(memberStart, components);
+      for (int id = 0; id < size; id++) {
+        if (component[id] >= 0) {
+          members[fill[component[id]]++] = id;
+        }
+      }
+      int[][] forward = edges(true);
+      succStart = forward[0];
+      succ = forward[1];
+      opSuccStart = forward[2];
+      opSucc = forward[3];
+      int[][] backward = edges(false);
+      predStart = backward[0];
+      pred = backward[1];
+      opPredStart = backward[2];
+      opPred = backward[3];
+    }
+
+    // Iterative Tarjan over the nodes that are not NOpNodes
+    private void tarjan(int size) {
+      int[] order = new int[size];
+      int[] low = new int[size];
+      Arrays.fill(order, -1);
+      int[] stack = new int[16];
+      int stackSize = 0;
+      long[] onStack = new long[words(size)];
+      int[] callNode = new int[16];
+      int[] callEdge = new int[16];
+      int next = 0;
+      for (int root = 0; root < size; root++) {
+        if (order[root] >= 0 || index.node(root) == null || get(opNodes, root)) {
+          continue;
+        }
+        int depth = 0;
+        callNode[0] = root;
+        callEdge[0] = index.successorStart(root);
+        order[root] = low[root] = next++;
+        stack = push(stack, stackSize++, root);
+        set(onStack, root);
+        while (depth >= 0) {
+          int n = callNode[depth];
+          if (callEdge[depth] < index.successorEnd(n)) {
+            int s = index.successor(callEdge[depth]++);
+            if (get(opNodes, s)) {
+              continue;
+            }
+            if (order[s] < 0) {
+              order[s] = low[s] = next++;
+              stack = push(stack, stackSize++, s);
+              set(onStack, s);
+              depth++;
+              callNode = push(callNode, depth, s);
+              callEdge = push(callEdge, depth, index.successorStart(s));
+            } else if (get(onStack, s)) {
+              low[n] = Math.min(low[n], order[s]);
+            }
+            continue;
+          }
+          if (low[n] == order[n]) {
+            int m;
+            do {
+              m = stack[--stackSize];
+              clear(onStack, m);
+              component[m] = components;
+            } while (m != n);
+            components++;
+          }
+          depth--;
+          if (depth >= 0) {
+            int parent = callNode[depth];
+            low[parent] = Math.min(low[parent], low[n]);
+          }
+        }
+      }
+    }
+
+    // { component edge starts, component edges, NOpNode starts, NOpNodes }
+    private int[][] edges(boolean forward) {
+      int[] edgeCounts = new int[components + 1];
+      int[] opCounts = new int[components + 1];
+      // last component/NOpNode added for the current component, to drop
+      // duplicates
+      int[] seenComponent = new int[components];
+      Arrays.fill(seenComponent, -1);
+      int[] seenOp = new int[index.size()];
+      Arrays.fill(seenOp, -1);
+      for (int pass = 0; pass < 2; pass++) {
+        int[] edgeStart = pass == 0 ? null : prefixSums(edgeCounts);
+        int[] opStart = pass == 0 ? null : prefixSums(opCounts);
+        int[] edges = pass == 0 ? null : new int[edgeStart[components]];
+        int[] ops = pass == 0 ? null : new int[opStart[components]];
+        int[] edgeFill = pass == 0 ? null : Arrays.copyOf(edgeStart, components);
+        int[] opFill = pass == 0 ? null : Arrays.copyOf(opStart, components);
+        Arrays.fill(seenComponent, -1);
+        Arrays.fill(seenOp, -1);
+        for (int c = 0; c < components; c++) {
+          for (int m = memberStart[c]; m < memberStart[c + 1]; m++) {
+            int n = members[m];
+            int k = forward ? index.successorStart(n) : index.predecessorStart(n);
+            int end = forward ? index.successorEnd(n) : index.predecessorEnd(n);
+            for (; k < end; k++) {
+              int s = forward ? index.successor(k) : index.predecessor(k);
+              if (get(opNodes, s)) {
+                if (seenOp[s] != c) {
+                  seenOp[s] = c;
+                  if (pass == 0) {
+                    opCounts[c + 1]++;
+                  } else {
+                    ops[opFill[c]++] = s;
+                  }
+                }
+              } else {
+                int d = component[s];
+                if (d != c && seenComponent[d] != c) {
+                  seenComponent[d] = c;
+                  if (pass == 0) {
+                    edgeCounts[c + 1]++;
+                  } else {
+                    edges[edgeFill[c]++] = d;
+                  }
+                }
+              }
+            }
+          }
+        }
+        if (pass == 1) {
+          return new int[][] { edgeStart, edges, opStart, ops };
+        }
+      }
+      throw new IllegalStateException();
+    }
+
+    void query(NNode start, boolean forward, Set<NNode> result) {
+      if (start.id >= index.size()) {
+        result.add(start);
+        return;
+      }
+      Buffers b = buffers.get().of(Math.max(index.size(), components));
+      result.add(start);
+      int id = start.id;
+      boolean startIsOp = get(opNodes, id);
+      // marks: components in b.marks, NOpNodes in b.opMarks
+      set(b.opMarks, id);
+      int opCount = 0;
+      b.ops = push(b.ops, opCount++, id);
+      int count = 0;
+      if (startIsOp) {
+        // an NOpNode start is expanded, but is in no component
+        int k = forward ? index.successorStart(id) : index.predecessorStart(id);
+        int end = forward ? index.successorEnd(id) : index.predecessorEnd(id);
+        for (; k < end; k++) {
+          int s = forward ? index.successor(k) : index.predecessor(k);
+          if (get(opNodes, s)) {
+            if (forward && !get(b.opMarks, s)) {
+              set(b.opMarks, s);
+              b.ops = push(b.ops, opCount++, s);
+            }
+          } else if (!get(b.marks, component[s])) {
+            set(b.marks, component[s]);
+            b.queue = push(b.queue, count++, component[s]);
+          }
+        }
+      } else if (component[id] >= 0) {
+        set(b.marks, component[id]);
+        b.queue = push(b.queue, count++, component[id]);
+      }
+      int[] edgeStart = forward ? succStart : predStart;
+      int[] edges = forward ? succ : pred;
+      int[] opStart = forward ? opSuccStart : opPredStart;
+      int[] ops = forward ? opSucc : opPred;
+      boolean withOps = forward || !startIsOp;
+      for (int i = 0; i < count; i++) {
+        int c = b.queue[i];
+        for (int k = edgeStart[c]; k < edgeStart[c + 1]; k++) {
+          if (!get(b.marks, edges[k])) {
+            set(b.marks, edges[k]);
+            b.queue = push(b.queue, count++, edges[k]);
+          }
+        }
+        if (withOps) {
+          for (int k = opStart[c]; k < opStart[c + 1]; k++) {
+            if (!get(b.opMarks, ops[k])) {
+              set(b.opMarks, ops[k]);
+              b.ops = push(b.ops, opCount++, ops[k]);
+            }
+          }
+        }
+        for (int m = memberStart[c]; m < memberStart[c + 1]; m++) {
+          result.add(index.node(members[m]));
+        }
+      }
+      for (int i = 1; i < opCount; i++) {
+        result.add(index.node(b.ops[i]));
+      }
+      b.clear(count);
+      for (int i = 0; i < opCount; i++) {
+        clear(b.opMarks, b.ops[i]);
+      }
+    }
+  }
+
+  private static class Buffers {
+    long[] marks = new long[0];
+    long[] opMarks = new long[0];
+    int[] queue = new int[64];
+    int[] ops = new int[64];
+
+    Buffers of(int size) {
+      if (marks.length < words(size)) {
+        marks = new long[words(size)];
+        opMarks = new long[words(size)];
+      }
+      return this;
+    }
+
+    // unmarks queue[0 .. count), leaving the marks all clear
+    void clear(int count) {
+      for (int i = 0; i < count; i++) {
+        Reachability.clear(marks, queue[i]);
+      }
+    }
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+
+  private static boolean get(long[] bits, int i) {
+    return (bits[i >>> 6] & (1L << i)) != 0;
+  }
+
+  private static void set(long[] bits, int i) {
+    bits[i >>> 6] |= 1L << i;
+  }
+
+  private static void clear(long[] bits, int i) {
+    bits[i >>> 6] &= ~(1L << i);
+  }
+
+  private static int[] push(int[] array, int i, int value) {
+    if (i == array.length) {
+      array = Arrays.copyOf(array, array.length * 2);
+    }
+    array[i] = value;
+    return array;
+  }
+
+  private static int[] prefixSums(int[] counts) {
+    int[] sums = counts.clone();
+    for (int i = 1; i < sums.length; i++) {
+      sums[i] += sums[i - 1];
+    }
+    return sums;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * ValueSetCache.java - part of the GATOR project
+ *
+ * Copyright (c) 2014, 2015 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import presto.android.gui.FixpointSolver.VarExtractor;
+import presto.android.gui.graph.NNode;
+import presto.android.gui.graph.NObjectNode;
+import presto.android.gui.graph.NOpNode;
+import presto.android.gui.graph.NVarNode;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * Variable value queries (DemandVariableValueQuery, QueryHelper) for the
+ * current flow graph and fixed-point solution.
+ *
+ * The solution maps are indexed by the variable the extractor of each query
+ * yields for the op node (its lhs, parameter or receiver), so that a query
+ * looks up the variables it has reached instead of scanning the maps. The
+ * results of the queries are memoized per node.
+ *
+ * Both depend on the flow graph edges and the solution, so v() starts over
+ * after an edge has been added or removed (NNode.edgeChanges), or after
+ * invalidate(), which FixpointSolver and FlowgraphRebuilder call when they
+ * are done changing them.
+ */
+public class ValueSetCache {
+  private static volatile ValueSetCache cached;
+  private static volatile int generation;
+
+  private final FixpointSolver solver;
+  private final int edgeChanges;
+  private final int builtGeneration;
+
+  // lhs -> solutionResults
+  private final ListMultimap<NVarNode, Set<NNode>> resultsByLhs = ArrayListMultimap.create();
+  // parameter/receiver/lhs/parameter -> solutionParameters/Receivers/Results/
+  // Listeners
+  private final ListMultimap<NVarNode, Set<NNode>> solutionsByVar = ArrayListMultimap.create();
+
+  private final ConcurrentMap<NNode, Set<NObjectNode>> refTypeValues = new ConcurrentHashMap<NNode, Set<NObjectNode>>();
+  private final ConcurrentMap<NNode, Set<NNode>> allValues = new ConcurrentHashMap<NNode, Set<NNode>>();
+
+  private ValueSetCache(FixpointSolver solver, int edgeChanges, int generation) {
+    this.solver = solver;
+    this.edgeChanges = edgeChanges;
+    this.builtGeneration = generation;
+    index(resultsByLhs, solver.solutionResults, solver.resultExtractor);
+    index(solutionsByVar, solver.solutionParameters, solver.parameterExtractor);
+    index(solutionsByVar, solver.solutionReceivers, solver.receiverExtractor);
+    index(solutionsByVar, solver.solutionResults, solver.resultExtractor);
+    index(solutionsByVar, solver.solutionListeners, solver.parameterExtractor);
+  }
+
+  /**
+   * @return the cache for the current flow graph and solution of solver
+   */
+  public static ValueSetCache v(FixpointSolver solver) {
+    ValueSetCache cache = cached;
+    if (cache == null || !cache.isValidFor(solver)) {
+      synchronized (ValueSetCache.class) {
+        cache = cached;
+        if (cache == null || !cache.isValidFor(solver)) {
+          cache = new ValueSetCache(solver, NNode.edgeChanges.get(), generation);
+          cached = cache;
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Drops the index and all memoized query results, after the flow graph or
+   * the solution has been changed.
+   */
+  public static synchronized void invalidate() {
+    generation++;
+    cached = null;
+  }
+
+  private boolean isValidFor(FixpointSolver solver) {
+    return this.solver == solver && edgeChanges == NNode.edgeChanges.get() && builtGeneration == generation;
+  }
+
+  private static void index(ListMultimap<NVarNode, Set<NNode>> index, Map<NOpNode, Set<NNode>> solutionMap,
+      VarExtractor extractor) {
+    for (Map.Entry<NOpNode, Set<NNode>> entry : solutionMap.entrySet()) {
+      NVarNode local = extractor.extract(entry.getKey());
+      if (local != null) {
+        index.put(local, entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Adds to resultSet the solutionResults of the op nodes whose lhs is in
+   * locals.
+   */
+  public void addResults(Set<NVarNode> locals, Set<NObjectNode> resultSet) {
+    addSolutions(resultsByLhs, locals, resultSet);
+  }
+
+  /**
+   * Adds to resultSet the solutions of the op nodes that have a local in
+   * locals as parameter, receiver or lhs, as QueryHelper extracts them.
+   */
+  public void addSolutions(Set<NVarNode> locals, Set<NObjectNode> resultSet) {
+    addSolutions(solutionsByVar, locals, resultSet);
+  }
+
+  private void addSolutions(ListMultimap<NVarNode, Set<NNode>> index, Set<NVarNode> locals,
+      Set<NObjectNode> resultSet) {
+    for (NVarNode local : locals) {
+      for (Set<NNode> solution : index.get(local)) {
+        for (NNode resultNode : solution) {
+          resultSet.add((NObjectNode) resultNode);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the memoized DemandVariableValueQuery.valueSetForRefTypes() of n,
+   *         null if there is none
+   */
+  public Set<NObjectNode> refTypeValues(NNode n) {
+    return refTypeValues.get(n);
+  }
+
+  /**
+   * Memoizes values as the DemandVariableValueQuery.valueSetForRefTypes() of
+   * n.
+   *
+   * @return values, unmodifiable
+   */
+  public Set<NObjectNode> putRefTypeValues(NNode n, Set<NObjectNode> values) {
+    Set<NObjectNode> result = Collections.unmodifiableSet(values);
+    refTypeValues.put(n, result);
+    return result;
+  }
+
+  /**
+   * @return the memoized QueryHelper.allVariableValues() of n, null if there
+   *         is none
+   */
+  public Set<NNode> allValues(NNode n) {
+    return allValues.get(n);
+  }
+
+  /**
+   * Memoizes values as the QueryHelper.allVariableValues() of n.
+   *
+   * @return values, unmodifiable
+   */
+  public Set<NNode> putAllValues(NNode n, Set<NNode> values) {
+    Set<NNode> result = Collections.unmodifiableSet(values);
+    allValues.put(n, result);
+    return result;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * AdjacencyIndex.java - part of the GATOR project
+ *
+ * Copyright (c) 2014, 2015 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.graph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A frozen copy of the flow graph edges in compressed sparse row form, indexed
+ * by NNode.id: the successors of the node with id i are the ids in
+ * succ[succStart[i]] ... succ[succStart[i + 1] - 1], in the order of its
+ * successor list, and likewise for its predecessors in pred.
+ *
+ * The flow graph is built once and then mostly read, but some later phases
+ * still add or remove edges (SetListener flow in FixpointSolver,
+ * FlowgraphRebuilder, IntentAnalysis). NNode counts every edge change, and
+ * current() only returns the index frozen last if nothing has changed since,
+ * so readers fall back to the node's own lists otherwise. Since the arrays
+ * are never written after freeze(), any number of threads can read them.
+ */
+public class AdjacencyIndex {
+	private static volatile AdjacencyIndex frozen;
+
+	// id -> node, null for ids not in the graph
+	private final NNode[] nodes;
+	private final int[] succStart;
+	private final int[] succ;
+	private final int[] predStart;
+	private final int[] pred;
+	// NNode.edgeChanges at freeze time
+	private final int edgeChanges;
+
+	private AdjacencyIndex(NNode[] nodes, int[] succStart, int[] succ, int[] predStart, int[] pred,
+			int edgeChanges) {
+		this.nodes = nodes;
+		this.succStart = succStart;
+		this.succ = succ;
+		this.predStart = predStart;
+		this.pred = pred;
+		this.edgeChanges = edgeChanges;
+	}
+
+	/**
+	 * Builds the index of the edges between the given nodes and the nodes they
+	 * are connected to, and makes it the current one. Must not run while edges
+	 * are being added or removed.
+	 */
+	public static AdjacencyIndex freeze(Collection<NNode> allNodes) {
+		int changes = NNode.edgeChanges.get();
+		NNode[] nodes = new NNode[NNode.nextId + 1];
+		for (NNode n : allNodes) {
+			nodes[n.id] = n;
+		}
+		// nodes only reachable through an edge, e.g. NAnyValueNode.ANY
+		for (NNode n : allNodes) {
+			if (n.succ != null) {
+				for (NNode s : n.succ) {
+					nodes[s.id] = s;
+				}
+			}
+			if (n.pred != null) {
+				for (NNode p : n.pred) {
+					nodes[p.id] = p;
+				}
+			}
+		}
+
+		int[] succStart = new int[nodes.length + 1];
+		int[] predStart = new int[nodes.length + 1];
+		for (int i = 0; i < nodes.length; i++) {
+			NNode n = nodes[i];
+			succStart[i + 1] = succStart[i] + (n == null || n.succ == null ? 0 : n.succ.size());
+			predStart[i + 1] = predStart[i] + (n == null || n.pred == null ? 0 : n.pred.size());
+		}
+		int[] succ = new int[succStart[nodes.length]];
+		int[] pred = new int[predStart[nodes.length]];
+		for (int i = 0; i < nodes.length; i++) {
+			NNode n = nodes[i];
+			if (n == null) {
+				continue;
+			}
+			if (n.succ != null) {
+				int k = succStart[i];
+				for (NNode s : n.succ) {
+					succ[k++] = s.id;
+				}
+			}
+			if (n.pred != null) {
+				int k = predStart[i];
+				for (NNode p : n.pred) {
+					pred[k++] = p.id;
+				}
+			}
+		}
+		AdjacencyIndex index = new AdjacencyIndex(nodes, succStart, succ, predStart, pred, changes);
+		frozen = index;
+		return index;
+	}
+
+	/**
+	 * @return the index frozen last, or null if an edge has been added or
+	 *         removed since
+	 */
+	public static AdjacencyIndex current() {
+		AdjacencyIndex index = frozen;
+		if (index != null && index.edgeChanges == NNode.edgeChanges.get()) {
+			return index;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of ids, i.e. one more than the largest id
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	public int numberOfEdges() {
+		return succ.length;
+	}
+
+	/**
+	 * @return the node with the given id, null if it was not in the graph
+	 */
+	public NNode node(int id) {
+		return nodes[id];
+	}
+
+	// Successors of id are successor(successorStart(id)) ...
+	// successor(successorEnd(id) - 1)
+	public int successorStart(int id) {
+		return id < nodes.length ? succStart[id] : 0;
+	}
+
+	public int successorEnd(int id) {
+		return id < nodes.length ? succStart[id + 1] : 0;
+	}
+
+	public int successor(int position) {
+		return succ[position];
+	}
+
+	public int predecessorStart(int id) {
+		return id < nodes.length ? predStart[id] : 0;
+	}
+
+	public int predecessorEnd(int id) {
+		return id < nodes.length ? predStart[id + 1] : 0;
+	}
+
+	public int predecessor(int position) {
+		return pred[position];
+	}
+
+	public Iterable<NNode> successors(NNode n) {
+		return view(succ, successorStart(n.id), successorEnd(n.id));
+	}
+
+	public Iterable<NNode> predecessors(NNode n) {
+		return view(pred, predecessorStart(n.id), predecessorEnd(n.id));
+	}
+
+	private Iterable<NNode> view(final int[] ids, final int start, final int end) {
+		if (start == end) {
+			return Collections.emptyList();
+		}
+		return new Iterable<NNode>() {
+			@Override
+			public Iterator<NNode> iterator() {
+				return new Iterator<NNode>() {
+					int position = start;
+
+					@Override
+					public boolean hasNext() {
+						return position < end;
+					}
+
+					@Override
+					public NNode next() {
+						if (position >= end) {
+							throw new NoSuchElementException();
+						}
+						return nodes[ids[position++]];
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @return the bytes taken by the arrays, with 4-byte references
+	 */
+	public long sizeInBytes() {
+		return 16L * 5 + 4L * (nodes.length + succStart.length + succ.length + predStart.length + pred.length);
+	}
+
+	@Override
+	public String toString() {
+		return "AdjacencyIndex: " + size() + " ids, " + numberOfEdges() + " edges, " + sizeInBytes() / 1024 + " KB";
+	}
+}
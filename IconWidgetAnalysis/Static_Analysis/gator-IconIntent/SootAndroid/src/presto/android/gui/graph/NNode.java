@@ -13,6 +13,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import soot.jimple.Stmt;
 
@@ -24,6 +25,11 @@ public abstract class NNode {
 	public static boolean verbose = false;
 	public static int nextId = 0;
 	public static int numberOfEdges = 0;
+	// Bumped whenever an edge is added or removed, see AdjacencyIndex. Edges of
+	// different nodes change under different locks, hence atomic.
+	public static final AtomicInteger edgeChanges = new AtomicInteger();
+	// Lists longer than this also get a hash set for the duplicate check
+	static final int LINEAR_SCAN_LIMIT = 8;
 	public int id;
 
 	// The flow graph node representing the widget id - could be NWidgetIdNode,
@@ -45,6 +51,9 @@ public abstract class NNode {
 	public ArrayList<Stmt> succSites;
 	protected ArrayList<NNode> pred;
 	public ArrayList<Stmt> predSites;
+	// Same nodes as succ/pred, once these are longer than LINEAR_SCAN_LIMIT
+	private Set<NNode> succSet;
+	private Set<NNode> predSet;
 
 	// Anyone whose 'parent' is this obj. Used only in
 	// NViewAllocNode, NInflNode, and NActivityNode
@@ -107,19 +116,44 @@ public abstract class NNode {
 	}
 
 	public synchronized void removeEdgeTo(NNode target) {
-		if (succ != null && succ.contains(target)) {
-			succ.remove(target);
+		if (hasSuccessor(target)) {
+			int i = succ.indexOf(target);
+			succ.remove(i);
+			succSites.remove(i);
+			if (succSet != null) {
+				succSet.remove(target);
+			}
 			numberOfEdges--;
+			edgeChanges.incrementAndGet();
 		} else {
-			if (target.pred != null && target.pred.contains(this)) {
+			if (target.hasPredecessor(this)) {
 				throw new RuntimeException("Broken edge " + this + "===>" + target);
 			}
 			return;
 		}
-		if (target.pred == null || !target.pred.contains(this)) {
+		if (!target.hasPredecessor(this)) {
 			throw new RuntimeException("Broken edge " + this + "===>" + target);
 		}
-		target.pred.remove(this);
+		int i = target.pred.indexOf(this);
+		target.pred.remove(i);
+		target.predSites.remove(i);
+		if (target.predSet != null) {
+			target.predSet.remove(this);
+		}
+	}
+
+	private boolean hasSuccessor(NNode x) {
+		if (succSet != null) {
+			return succSet.contains(x);
+		}
+		return succ != null && succ.contains(x);
+	}
+
+	private boolean hasPredecessor(NNode x) {
+		if (predSet != null) {
+			return predSet.contains(x);
+		}
+		return pred != null && pred.contains(x);
 	}
 
 	public synchronized void addEdgeTo(NNode x) {
@@ -131,9 +165,15 @@ public abstract class NNode {
 			succ = Lists.newArrayListWithCapacity(4);
 			succSites = Lists.newArrayListWithCapacity(4);
 		}
-		if (!succ.contains(x)) {
+		if (!hasSuccessor(x)) {
 			succ.add(x);
+			if (succSet != null) {
+				succSet.add(x);
+			} else if (succ.size() > LINEAR_SCAN_LIMIT) {
+				succSet = Sets.newHashSet(succ);
+			}
 			numberOfEdges++;
+			edgeChanges.incrementAndGet();
 		} else {
 			return;
 		}
@@ -150,11 +190,16 @@ public abstract class NNode {
 			x.pred = Lists.newArrayListWithCapacity(4);
 			x.predSites = Lists.newArrayListWithCapacity(4);
 		}
-		if (x.pred.contains(this)) {
+		if (x.hasPredecessor(this)) {
 			throw new RuntimeException();
 		}
 		x.pred.add(this);
 		x.predSites.add(s);
+		if (x.predSet != null) {
+			x.predSet.add(this);
+		} else if (x.pred.size() > LINEAR_SCAN_LIMIT) {
+			x.predSet = Sets.newHashSet(x.pred);
+		}
 	}
 
 	public synchronized void addParent(NNode p) {
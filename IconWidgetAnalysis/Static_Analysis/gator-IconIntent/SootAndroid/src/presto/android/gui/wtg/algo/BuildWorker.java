@@ -8,54 +8,15 @@
  */
 package presto.android.gui.wtg.algo;
 
-import java.util.Map;
-
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
-
-import presto.android.Logger;
-
-public class BuildWorker implements Runnable {
-  public BuildWorker(BuildScheduler scheduler) {
-    Preconditions.checkNotNull(scheduler);
-    this.scheduler = scheduler;
-    this.output = Maps.newHashMap();
-  }
-
-  public void run() {
-    this.doTask();
-    // unmark task when it is finished
-    unsetTask();
-    try {
-      scheduler.threadPool.put(this);
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-  }
 
-  public void setTask(AlgorithmInput input) {
-    this.input = input;
-  }
-
-  private void unsetTask() {
-    this.input = null;
-  }
+import presto.android.gui.wtg.parallel.TaskRunner;
 
-  public void doTask() {
+public class BuildWorker implements TaskRunner.Task<AlgorithmInput, AlgorithmOutput> {
+  @Override
+  public AlgorithmOutput run(AlgorithmInput input) {
     Preconditions.checkNotNull(input);
-    if (output.containsKey(input)) {
-      Logger.err(getClass().getSimpleName(), "input has been proccessed: " + input);
-    }
     Algorithm algo = input.algo;
-    AlgorithmOutput partialOutput = algo.execute(input);
-    output.put(input, partialOutput);
+    return algo.execute(input);
   }
-
-  public Map<AlgorithmInput, AlgorithmOutput> getOutput() {
-    return output;
-  }
-
-  private final BuildScheduler scheduler;
-  private AlgorithmInput input;
-  private Map<AlgorithmInput, AlgorithmOutput> output;
 }
@@ -21,6 +21,8 @@ import presto.android.gui.GraphUtil;
 import presto.android.gui.Flowgraph;
 import presto.android.gui.GUIAnalysisOutput;
 import presto.android.gui.JimpleUtil;
+import presto.android.gui.ValueSetCache;
+import presto.android.gui.graph.AdjacencyIndex;
 import presto.android.gui.graph.NAllocNode;
 import presto.android.gui.graph.NNode;
 import presto.android.gui.graph.NObjectNode;
@@ -1092,6 +1094,8 @@ public class FlowgraphRebuilder {
   private void build() {
     rebuildFlow();
     postBuildFlow();
+    AdjacencyIndex.freeze(flowgraph.allNNodes);
+    ValueSetCache.invalidate();
   }
   
   private void collectAsyncRelatedStmts(SootMethod currentMethod, Stmt s) {
@@ -14,10 +14,8 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
 
 import presto.android.Configs;
-import presto.android.Logger;
 import presto.android.gui.GUIAnalysisOutput;
 import presto.android.gui.wtg.analyzer.CFGAnalyzerInput;
 import presto.android.gui.wtg.analyzer.CFGAnalyzerOutput;
@@ -37,56 +35,36 @@ public class CFGScheduler {
 
   private void initializeScheduler() {
     for (int i = 0; i < Configs.workerNum; i++) {
-      try {
-        workerPool.put(new CFGWorker(this, guiOutput, flowgraphRebuilder));
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
+      workerPool.add(new CFGWorker(guiOutput, flowgraphRebuilder));
     }
   }
 
   public Map<CFGAnalyzerInput, CFGAnalyzerOutput> schedule(Set<CFGAnalyzerInput> inputs) {
     // the underline idea is to parallelise analyzeCallbackMethod
     // and leave the rest executed in sequence
-    for (CFGAnalyzerInput input : inputs) {
-      CFGWorker worker = null;
-      try {
-        worker = workerPool.take();
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
-      if (worker == null) {
-        Logger.err(getClass().getSimpleName(), "can not grab existing worker to do task");
-      }
-      // set the work to do + the input data
-      worker.setTask(input);
-      // start new thread to do this job
-      new Thread(worker).start();
-    }
-    // wait every thread to finish
-    while (workerPool.size() != Configs.workerNum) {
-      try {
-        Thread.sleep(500);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
-    }
-    Map<CFGAnalyzerInput, CFGAnalyzerOutput> aggregateOutput = Maps.newHashMap();
-    // aggregate the output from all the threads
-    for (CFGWorker worker : workerPool) {
-      Map<CFGAnalyzerInput, CFGAnalyzerOutput> partialOutput = worker.getOutput();
-      for (CFGAnalyzerInput input : partialOutput.keySet()) {
-        if (aggregateOutput.containsKey(input)) {
-          Logger.err(getClass().getSimpleName(), "cfg analyzer input has been processed: " + input);
-        }
-        CFGAnalyzerOutput output = partialOutput.get(input);
-        aggregateOutput.put(input, output);
-      }
-    }
-    return aggregateOutput;
+    return TaskRunner.runAll(getClass().getSimpleName(), inputs,
+        new TaskRunner.Task<CFGAnalyzerInput, CFGAnalyzerOutput>() {
+          @Override
+          public CFGAnalyzerOutput run(CFGAnalyzerInput input) {
+            // a CFGAnalyzer analyzes one callback at a time, so borrow an
+            // idle worker for the task
+            CFGWorker worker;
+            try {
+              worker = workerPool.take();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException("[Error]: interrupted while waiting for a cfg worker", e);
+            }
+            try {
+              return worker.doTask(input);
+            } finally {
+              workerPool.add(worker);
+            }
+          }
+        }, false);
   }
 
-  // thread pool
+  // idle workers
   final BlockingQueue<CFGWorker> workerPool;
   private final GUIAnalysisOutput guiOutput;
   private final FlowgraphRebuilder flowgraphRebuilder;
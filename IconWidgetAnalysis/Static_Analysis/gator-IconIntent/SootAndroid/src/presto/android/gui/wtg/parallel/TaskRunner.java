@@ -0,0 +1,157 @@
+/*
+ * TaskRunner.java - part of the GATOR project
+ *
+ * Copyright (c) 2014, 2015 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE in the
+ * root directory.
+ */
+package presto.android.gui.wtg.parallel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import presto.android.Configs;
+import presto.android.Logger;
+
+/**
+ * Runs the tasks of BuildScheduler and CFGScheduler on one pool of
+ * Configs.workerNum daemon threads, shared by all schedulers.
+ *
+ * If a task throws, the tasks that have not finished yet are cancelled and
+ * runAll() throws a RuntimeException with the input of the failed task and
+ * the exception as cause; before, the worker thread died and the scheduler
+ * waited forever for it to come back. Queued tasks never start, and running
+ * ones are interrupted.
+ */
+public class TaskRunner {
+  public interface Task<I, O> {
+    public O run(I input);
+  }
+
+  private static ExecutorService pool;
+  private static int poolSize;
+
+  /**
+   * @return the shared pool, with Configs.workerNum threads
+   */
+  public static synchronized ExecutorService pool() {
+    if (pool == null || poolSize != Configs.workerNum) {
+      if (pool != null) {
+        pool.shutdown();
+      }
+      poolSize = Configs.workerNum;
+      pool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+        private final ThreadFactory threads = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = threads.newThread(r);
+          // idle workers must not keep the JVM alive
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return pool;
+  }
+
+  /**
+   * Runs task on every input in parallel and waits for all of them.
+   *
+   * @param tag
+   *          the name to report the timing under
+   * @param progress
+   *          print a dot every ten finished tasks
+   * @return the output of task for each input
+   */
+  public static <I, O> Map<I, O> runAll(String tag, Set<I> inputs, final Task<I, O> task,
+      boolean progress) {
+    long start = System.nanoTime();
+    ExecutorService pool = pool();
+    List<I> submitted = Lists.newArrayListWithCapacity(inputs.size());
+    List<Future<O>> futures = Lists.newArrayListWithCapacity(inputs.size());
+    // nanoseconds spent in each task, by submission order
+    final long[] taskTimes = new long[inputs.size()];
+    for (final I input : inputs) {
+      final int i = submitted.size();
+      submitted.add(input);
+      futures.add(pool.submit(new Callable<O>() {
+        @Override
+        public O call() {
+          long taskStart = System.nanoTime();
+          try {
+            return task.run(input);
+          } finally {
+            taskTimes[i] = System.nanoTime() - taskStart;
+          }
+        }
+      }));
+    }
+
+    Map<I, O> aggregateOutput = Maps.newHashMap();
+    int count = 0;
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        aggregateOutput.put(submitted.get(i), futures.get(i).get());
+      } catch (ExecutionException e) {
+        cancelAll(futures);
+        throw new RuntimeException("[" + tag + "]: task failed for " + submitted.get(i), e.getCause());
+      } catch (CancellationException e) {
+        cancelAll(futures);
+        throw new RuntimeException("[" + tag + "]: task cancelled for " + submitted.get(i), e);
+      } catch (InterruptedException e) {
+        cancelAll(futures);
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("[" + tag + "]: interrupted while waiting for " + submitted.get(i), e);
+      }
+      final int steps = 10;
+      if (progress && ++count % steps == 0) {
+        System.out.print(".");
+        if (count >= 100 * steps) {
+          System.out.println();
+          count = 0;
+        }
+      }
+    }
+    if (progress) {
+      System.out.println();
+    }
+    report(tag, submitted, taskTimes, System.nanoTime() - start);
+    return aggregateOutput;
+  }
+
+  private static <O> void cancelAll(List<Future<O>> futures) {
+    for (Future<O> future : futures) {
+      future.cancel(true);
+    }
+  }
+
+  private static <I> void report(String tag, List<I> inputs, long[] taskTimes, long wallTime) {
+    if (inputs.isEmpty()) {
+      return;
+    }
+    long total = 0;
+    int slowest = 0;
+    for (int i = 0; i < taskTimes.length; i++) {
+      total += taskTimes[i];
+      if (taskTimes[i] > taskTimes[slowest]) {
+        slowest = i;
+      }
+    }
+    Logger.verb(tag, String.format("%d tasks on %d workers in %d ms: %d ms in tasks, mean %.1f ms, "
+        + "max %d ms (%s)", inputs.size(), Configs.workerNum, wallTime / 1000000, total / 1000000,
+        total / 1e6 / inputs.size(), taskTimes[slowest] / 1000000, inputs.get(slowest)));
+  }
+}
@@ -10,7 +10,6 @@ package presto.android.gui.wtg.util;
 
 import java.util.Collections;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
@@ -18,6 +17,9 @@ import com.google.common.collect.Sets;
 
 import presto.android.gui.FixpointSolver;
 import presto.android.gui.GUIAnalysis;
+import presto.android.gui.Reachability;
+import presto.android.gui.ValueSetCache;
+import presto.android.gui.graph.AdjacencyIndex;
 import presto.android.gui.graph.NNode;
 import presto.android.gui.graph.NObjectNode;
 import presto.android.gui.graph.NOpNode;
@@ -44,6 +46,11 @@ public class QueryHelper {
     if (startingNode == null) {
       return Collections.emptySet();
     }
+    ValueSetCache cache = ValueSetCache.v(solver);
+    Set<NNode> values = cache.allValues(startingNode);
+    if (values != null) {
+      return values;
+    }
     Set<NObjectNode> refNodes = Sets.newHashSet();
     Set<NVarNode> localNodes = Sets.newHashSet();
     Set<NNode> otherNodes = Sets.newHashSet();
@@ -56,33 +63,14 @@ public class QueryHelper {
         otherNodes.add(node);
       }
     }
-    // fixpoint results
-    extractFixpointSolution(solver.solutionParameters,
-        parameterExtractor, refNodes, localNodes);
-    extractFixpointSolution(solver.solutionReceivers,
-        receiverExtractor, refNodes, localNodes);
-    extractFixpointSolution(solver.solutionResults,
-        resultExtractor, refNodes, localNodes);
-    extractFixpointSolution(solver.solutionListeners,
-        parameterExtractor, refNodes, localNodes);
+    // fixpoint results: parameters, receivers, results and listeners
+    cache.addSolutions(localNodes, refNodes);
     // merge them together
     otherNodes.addAll(refNodes);
     otherNodes.addAll(localNodes);
-    return otherNodes;
+    return cache.putAllValues(startingNode, otherNodes);
   }
 
-  private void extractFixpointSolution(Map<NOpNode, Set<NNode>> solutionMap,
-      VarExtractor extractor, Set<NObjectNode> resultSet, Set<NVarNode> locals) {
-    for (Map.Entry<NOpNode, Set<NNode>> entry : solutionMap.entrySet()) {
-      NOpNode opNode = entry.getKey();
-      NVarNode local = extractor.extract(opNode);
-      if (locals.contains(local)) {
-        for (NNode resultNode : entry.getValue()) {
-          resultSet.add((NObjectNode) resultNode);
-        }
-      }
-    }
-  }
   // this method will help find all possible back reachable NNode
   // it will not stop traversing even it reaches NOpNode
   private Set<NNode> backwardReachableNodes(NNode n) {
@@ -93,12 +81,18 @@ public class QueryHelper {
   }
 
   private void findBackwardReachableNodes(NNode start, Set<NNode> reachableNodes) {
+    // the successor/predecessor lists without copying, if the graph is frozen
+    AdjacencyIndex index = AdjacencyIndex.current();
+    if (index != null && reachableNodes.isEmpty()) {
+      Reachability.of(index).backward(start, reachableNodes);
+      return;
+    }
     LinkedList<NNode> worklist = Lists.newLinkedList();
     worklist.add(start);
     reachableNodes.add(start);
     while (!worklist.isEmpty()) {
       NNode n = worklist.remove();
-      for (NNode s : n.getPredecessors()) {
+      for (NNode s : index == null ? n.getPredecessors() : index.predecessors(n)) {
         if (reachableNodes.contains(s)) {
           continue;
         }
@@ -117,29 +111,4 @@ public class QueryHelper {
   public Set<NNode> allVariableValues(NNode n) {
     return allValueSetFor(n);
   }
-
-  private interface VarExtractor {
-    public NVarNode extract(NOpNode opNode);
-  }
-
-  private final VarExtractor parameterExtractor = new VarExtractor() {
-    @Override
-    public NVarNode extract(NOpNode opNode) {
-      return (NVarNode) opNode.getParameter();
-    }
-  };
-
-  private final VarExtractor resultExtractor = new VarExtractor() {
-    @Override
-    public NVarNode extract(NOpNode opNode) {
-      return opNode.getLhs();
-    }
-  };
-
-  private final VarExtractor receiverExtractor = new VarExtractor() {
-    @Override
-    public NVarNode extract(NOpNode opNode) {
-      return opNode.getReceiver();
-    }
-  };
 }